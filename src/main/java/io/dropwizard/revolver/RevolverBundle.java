@@ -15,6 +15,8 @@
  */
 package io.dropwizard.revolver;
 
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.json.MetricsModule;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -36,17 +38,23 @@ import io.dropwizard.revolver.aeroapike.AerospikeConnectionManager;
 import io.dropwizard.revolver.callback.CallbackHandler;
 import io.dropwizard.revolver.core.RevolverExecutionException;
 import io.dropwizard.revolver.core.config.AerospikeMailBoxConfig;
+import io.dropwizard.revolver.core.config.AsyncExecutorConfig;
 import io.dropwizard.revolver.core.config.InMemoryMailBoxConfig;
 import io.dropwizard.revolver.core.config.RevolverConfig;
 import io.dropwizard.revolver.core.config.RevolverServiceConfig;
+import io.dropwizard.revolver.core.limiter.LoadShedder;
+import io.dropwizard.revolver.discovery.DiscoveryHealthCheck;
+import io.dropwizard.revolver.discovery.DiscoveryWarmup;
 import io.dropwizard.revolver.discovery.RevolverServiceResolver;
 import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
 import io.dropwizard.revolver.discovery.model.SimpleEndpointSpec;
+import io.dropwizard.revolver.exception.ConcurrencyLimitExceptionMapper;
 import io.dropwizard.revolver.exception.RevolverExceptionMapper;
 import io.dropwizard.revolver.exception.TimeoutExceptionMapper;
 import io.dropwizard.revolver.filters.RevolverRequestFilter;
 import io.dropwizard.revolver.handler.ConfigSource;
 import io.dropwizard.revolver.handler.DynamicConfigHandler;
+import io.dropwizard.revolver.http.RevolverHttpClientFactory;
 import io.dropwizard.revolver.http.RevolverHttpCommand;
 import io.dropwizard.revolver.http.auth.BasicAuthConfig;
 import io.dropwizard.revolver.http.auth.TokenAuthConfig;
@@ -54,20 +62,21 @@ import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
 import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
 import io.dropwizard.revolver.http.config.RevolverHttpsServiceConfig;
 import io.dropwizard.revolver.http.model.ApiPathMap;
+import io.dropwizard.revolver.http.model.ApiPathMatch;
 import io.dropwizard.revolver.persistence.AeroSpikePersistenceProvider;
 import io.dropwizard.revolver.persistence.InMemoryPersistenceProvider;
 import io.dropwizard.revolver.persistence.PersistenceProvider;
 import io.dropwizard.revolver.resource.*;
+import io.dropwizard.revolver.routing.RouteTable;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 import io.dropwizard.xml.XmlBundle;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.curator.framework.CuratorFramework;
 import org.msgpack.jackson.dataformat.MessagePackFactory;
 
-import javax.ws.rs.core.MultivaluedHashMap;
-import javax.ws.rs.core.MultivaluedMap;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
@@ -78,10 +87,14 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * @author phaneesh
@@ -89,9 +102,7 @@ import java.util.regex.Pattern;
 @Slf4j
 public abstract class RevolverBundle<T extends Configuration> implements ConfiguredBundle<T> {
 
-    private static ConcurrentHashMap<String, RevolverHttpCommand> httpCommands = new ConcurrentHashMap<>();
-
-    private static MultivaluedMap<String, ApiPathMap> serviceToPathMap = new MultivaluedHashMap<>();
+    private static final AtomicReference<RouteTable> routeTable = new AtomicReference<>(RouteTable.EMPTY);
 
     public static final ObjectMapper msgPackObjectMapper = new ObjectMapper(new MessagePackFactory());
 
@@ -99,7 +110,11 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
 
     private static RevolverServiceResolver serviceNameResolver = null;
 
-    public static ConcurrentHashMap<String, Boolean> apiStatus = new ConcurrentHashMap<>();
+    private static MetricRegistry metrics = new MetricRegistry();
+
+    private static ExecutorService asyncExecutor = null;
+
+    private static LoadShedder loadShedder = null;
 
     @Override
     public void initialize(final Bootstrap<?> bootstrap) {
@@ -114,11 +129,16 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
 
     @Override
     public void run(final T configuration, final Environment environment) throws CertificateException, UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
+        metrics = environment.metrics();
+        RevolverHttpClientFactory.instrument(metrics);
         //Add metrics publisher
         final HystrixCodaHaleMetricsPublisher metricsPublisher = new HystrixCodaHaleMetricsPublisher(environment.metrics());
         HystrixPlugins.getInstance().registerMetricsPublisher(metricsPublisher);
-        initializeRevolver(configuration, environment);
         final RevolverConfig revolverConfig = getRevolverConfig(configuration);
+        asyncExecutor = buildAsyncExecutor(revolverConfig, environment);
+        loadShedder = revolverConfig.getLoadShedding() != null && revolverConfig.getLoadShedding().isEnabled()
+                ? new LoadShedder(revolverConfig.getLoadShedding(), environment.metrics()) : null;
+        initializeRevolver(configuration, environment);
         if(Strings.isNullOrEmpty(revolverConfig.getHystrixStreamPath())) {
             environment.getApplicationContext().addServlet(HystrixMetricsStreamServlet.class, "/hystrix.stream");
         } else {
@@ -126,6 +146,7 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
         }
         environment.jersey().register(new RevolverExceptionMapper(environment.getObjectMapper(), xmlObjectMapper, msgPackObjectMapper));
         environment.jersey().register(new TimeoutExceptionMapper(environment.getObjectMapper()));
+        environment.jersey().register(new ConcurrencyLimitExceptionMapper(environment.getObjectMapper()));
         final PersistenceProvider persistenceProvider = getPersistenceProvider(configuration, environment);
         final CallbackHandler callbackHandler = CallbackHandler.builder()
                 .persistenceProvider(persistenceProvider)
@@ -133,7 +154,7 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
                 .build();
         environment.jersey().register(new RevolverRequestFilter(revolverConfig));
         environment.jersey().register(new RevolverRequestResource(environment.getObjectMapper(),
-                msgPackObjectMapper, xmlObjectMapper, persistenceProvider, callbackHandler));
+                msgPackObjectMapper, xmlObjectMapper, persistenceProvider, callbackHandler, asyncExecutor, loadShedder));
         environment.jersey().register(new RevolverCallbackResource(persistenceProvider, callbackHandler));
         environment.jersey().register(new RevolverMailboxResource(persistenceProvider, environment.getObjectMapper(),
                 xmlObjectMapper, msgPackObjectMapper));
@@ -150,6 +171,36 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
     }
 
 
+    private ExecutorService buildAsyncExecutor(final RevolverConfig revolverConfig, final Environment environment) {
+        final AsyncExecutorConfig executorConfig = revolverConfig.getAsyncExecutor() == null ? new AsyncExecutorConfig() : revolverConfig.getAsyncExecutor();
+        final ExecutorService executorService = environment.lifecycle().executorService("revolver-async-%d")
+                .minThreads(executorConfig.getConcurrency())
+                .maxThreads(executorConfig.getConcurrency())
+                .keepAliveTime(Duration.seconds(executorConfig.getKeepAliveInSeconds()))
+                //The pool is fixed size (it only grows past core once the queue is full); let idle threads go instead
+                .allowCoreThreadTimeOut(true)
+                .workQueue(new ArrayBlockingQueue<>(executorConfig.getMaxQueueSize()))
+                //Never fail a completed call because continuations are backed up; run them on the completing thread instead
+                .rejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy())
+                .build();
+        return new InstrumentedExecutorService(executorService, environment.metrics(), "revolver.async");
+    }
+
+    public static MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Shedder requests are admitted through before dispatch; null when load shedding is off
+     */
+    public static LoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+
+    public static ExecutorService getAsyncExecutor() {
+        return asyncExecutor == null ? ForkJoinPool.commonPool() : asyncExecutor;
+    }
+
     private void registerTypes(final Bootstrap<?> bootstrap) {
         bootstrap.getObjectMapper().registerModule(new MetricsModule(TimeUnit.MINUTES, TimeUnit.MILLISECONDS, false));
         bootstrap.getObjectMapper().registerSubtypes(new NamedType(RevolverHttpServiceConfig.class, "http"));
@@ -170,45 +221,60 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
         xmlObjectMapper.configure(ToXmlGenerator.Feature.WRITE_XML_1_1, true);
     }
 
-    private static Map<String, RevolverHttpApiConfig> generateApiConfigMap(final RevolverHttpServiceConfig serviceConfiguration) {
-        val tokenMatch = Pattern.compile("\\{(([^/])+\\})");
+    private static List<ApiPathMap> generateApiPathMaps(final RevolverHttpServiceConfig serviceConfiguration) {
         List<RevolverHttpApiConfig> apis = new ArrayList<>(serviceConfiguration.getApis());
-        apis.sort((o1, o2) -> {
-            String o1Expr = generatePathExpression(o1.getPath());
-            String o2Expr = generatePathExpression(o2.getPath());
-            return tokenMatch.matcher(o2Expr).groupCount() - tokenMatch.matcher(o1Expr).groupCount();
-        });
         apis.sort(Comparator.comparing(RevolverHttpApiConfig::getPath));
-        apis.forEach(apiConfig -> serviceToPathMap.add(serviceConfiguration.getService(),
-                ApiPathMap.builder()
+        return apis.stream()
+                .map(apiConfig -> ApiPathMap.builder()
                         .api(apiConfig)
-                        .path(generatePathExpression(apiConfig.getPath())).build()));
+                        .path(apiConfig.getPath()).build())
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, RevolverHttpApiConfig> generateApiConfigMap(final List<ApiPathMap> apiPathMaps) {
         final ImmutableMap.Builder<String, RevolverHttpApiConfig> configMapBuilder = ImmutableMap.builder();
-        apis.forEach(apiConfig -> configMapBuilder.put(apiConfig.getApi(), apiConfig));
+        apiPathMaps.forEach(apiPathMap -> configMapBuilder.put(apiPathMap.getApi().getApi(), apiPathMap.getApi()));
         return configMapBuilder.build();
     }
 
-    private static String generatePathExpression(final String path) {
-        return path.replaceAll("\\{(([^/])+\\})", "(([^/])+)");
+    public static RouteTable getRouteTable() {
+        return routeTable.get();
     }
 
     public static ApiPathMap matchPath(final String service, final String path) {
-        if (serviceToPathMap.containsKey(service)) {
-            final val apiMap = serviceToPathMap.get(service).stream().filter(api -> path.matches(api.getPath())).findFirst();
-            return apiMap.orElse(null);
-        } else {
-            return null;
-        }
+        final ApiPathMatch match = matchApi(service, path);
+        return match == null ? null : match.getApiPathMap();
+    }
+
+    public static ApiPathMatch matchApi(final String service, final String path) {
+        return routeTable.get().match(service, path);
     }
 
     public static RevolverHttpCommand getHttpCommand(final String service) {
-        val command = httpCommands.get(service);
+        val command = routeTable.get().command(service);
         if (null == command) {
             throw new RevolverExecutionException(RevolverExecutionException.Type.BAD_REQUEST, "No service spec defined for service: " + service);
         }
         return command;
     }
 
+    public static Boolean getApiStatus(final String key) {
+        return routeTable.get().getApiStatus().get(key);
+    }
+
+    public static Map<String, Boolean> getApiStatus() {
+        return routeTable.get().getApiStatus();
+    }
+
+    public static synchronized boolean setApiStatus(final String key, final boolean status) {
+        final RouteTable current = routeTable.get();
+        if (!current.getApiStatus().containsKey(key)) {
+            return false;
+        }
+        routeTable.set(current.withApiStatus(key, status));
+        return true;
+    }
+
     public static RevolverServiceResolver getServiceNameResolver() {
         return serviceNameResolver;
     }
@@ -244,44 +310,54 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
                     .curatorFramework(getCurator())
                     .objectMapper(environment.getObjectMapper())
                     .resolverConfig(revolverConfig.getServiceResolverConfig())
+                    .metrics(environment.metrics())
                     .build() : RevolverServiceResolver.builder()
                     .resolverConfig(revolverConfig.getServiceResolverConfig())
                     .objectMapper(environment.getObjectMapper())
+                    .metrics(environment.metrics())
                     .build();
         } else {
             serviceNameResolver = RevolverServiceResolver.builder()
                     .objectMapper(environment.getObjectMapper())
+                    .metrics(environment.metrics())
                     .build();
         }
         loadServiceConfiguration(revolverConfig);
+        environment.lifecycle().manage(new DiscoveryWarmup(serviceNameResolver));
+        environment.healthChecks().register("revolver-discovery", new DiscoveryHealthCheck(serviceNameResolver));
         System.out.println("***************************************************************************************************");
         System.out.println("Revolver Service Map");
         System.out.println("***************************************************************************************************");
-        serviceToPathMap.forEach( (k, v) -> {
+        routeTable.get().getPathMaps().forEach( (k, v) -> {
             System.out.println("\tService: " +k);
             v.forEach( a -> a.getApi().getMethods().forEach(b -> System.out.println("\t\t[" +b.name() +"] " + a.getApi().getApi() +": " +a.getPath())));
         });
         System.out.println("***************************************************************************************************");
     }
 
-    public static void loadServiceConfiguration(RevolverConfig revolverConfig) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
+    public static synchronized void loadServiceConfiguration(RevolverConfig revolverConfig) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
+        //Build the new route table off to the side; request threads keep using the current one till the swap
+        final RouteTable.Builder routes = RouteTable.builder()
+                .routeCache(revolverConfig.getRouteCacheSize(), metrics);
         for (final RevolverServiceConfig config : revolverConfig.getServices()) {
             final String type = config.getType();
             switch (type) {
                 case "http":
-                    registerHttpCommand(revolverConfig, config);
+                    registerHttpCommand(revolverConfig, config, routes);
                     break;
                 case "https":
-                    registerHttpsCommand(revolverConfig, config);
+                    registerHttpsCommand(revolverConfig, config, routes);
                     break;
                 default:
                     log.warn("Unsupported Service type: " + type);
 
             }
         }
+        routeTable.set(routes.build(routeTable.get()));
+        RevolverHttpClientFactory.retain(routeTable.get().getCommands().keySet());
     }
 
-    private static void registerHttpsCommand(RevolverConfig revolverConfig, RevolverServiceConfig config) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
+    private static void registerHttpsCommand(RevolverConfig revolverConfig, RevolverServiceConfig config, RouteTable.Builder routes) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
         final RevolverHttpsServiceConfig httpsConfig = (RevolverHttpsServiceConfig) config;
         final RevolverHttpServiceConfig revolverHttpServiceConfig = RevolverHttpServiceConfig.builder()
                 .apis(httpsConfig.getApis())
@@ -296,43 +372,44 @@ public abstract class RevolverBundle<T extends Configuration> implements Configu
                 .secured(true)
                 .service(httpsConfig.getService())
                 .trackingHeaders(httpsConfig.isTrackingHeaders())
+                .nonBlocking(httpsConfig.isNonBlocking())
+                .protocol(httpsConfig.getProtocol())
                 .type(httpsConfig.getType())
                 .build();
         try {
-            registerCommand(revolverConfig, config, revolverHttpServiceConfig);
+            registerCommand(revolverConfig, config, revolverHttpServiceConfig, routes);
         } catch (ExecutionException e) {
             log.error("Error creating http command: {}", config.getService(), e);
         }
     }
 
-    private static void registerCommand(RevolverConfig revolverConfig, RevolverServiceConfig config, RevolverHttpServiceConfig revolverHttpServiceConfig) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException, ExecutionException {
+    private static void registerCommand(RevolverConfig revolverConfig, RevolverServiceConfig config, RevolverHttpServiceConfig revolverHttpServiceConfig, RouteTable.Builder routes) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException, ExecutionException {
+        final List<ApiPathMap> apiPathMaps = generateApiPathMaps(revolverHttpServiceConfig);
         RevolverHttpCommand command = RevolverHttpCommand.builder()
                 .clientConfiguration(revolverConfig.getClientConfig())
                 .runtimeConfig(revolverConfig.getGlobal())
-                .serviceConfiguration(revolverHttpServiceConfig).apiConfigurations(generateApiConfigMap(revolverHttpServiceConfig))
+                .serviceConfiguration(revolverHttpServiceConfig).apiConfigurations(generateApiConfigMap(apiPathMaps))
                 .serviceResolver(serviceNameResolver)
+                .asyncExecutor(getAsyncExecutor())
                 .traceCollector(trace -> {
                     //TODO: Put in a publisher if required
                 }).build();
-        httpCommands.put(config.getService(), command);
-        if(config instanceof RevolverHttpServiceConfig) {
-            ((RevolverHttpServiceConfig) config).getApis().forEach(a ->
-                    apiStatus.put(config.getService() + "." + a.getApi(), true));
-        }
+        command.prepare();
+        routes.service(config.getService(), command, apiPathMaps);
     }
 
-    private static void registerHttpCommand(RevolverConfig revolverConfig, RevolverServiceConfig config) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
+    private static void registerHttpCommand(RevolverConfig revolverConfig, RevolverServiceConfig config, RouteTable.Builder routes) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, IOException, KeyManagementException, UnrecoverableKeyException {
         final RevolverHttpServiceConfig httpConfig = (RevolverHttpServiceConfig) config;
         httpConfig.setSecured(false);
         try {
-            registerCommand(revolverConfig, config, httpConfig);
+            registerCommand(revolverConfig, config, httpConfig, routes);
         } catch (ExecutionException e) {
             log.error("Error creating http command: {}", config.getService(), e);
         }
     }
 
-    public static void addHttpCommand(String service, RevolverHttpCommand httpCommand) {
-        httpCommands.put(service, httpCommand);
+    public static synchronized void addHttpCommand(String service, RevolverHttpCommand httpCommand) {
+        routeTable.set(routeTable.get().withCommand(service, httpCommand));
     }
 
 }
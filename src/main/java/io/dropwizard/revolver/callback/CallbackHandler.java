@@ -240,6 +240,7 @@ public class CallbackHandler {
                             .serviceConfiguration(httpConfig)
                             .apiConfigurations(generateApiConfigMap(httpConfig))
                             .serviceResolver(RevolverBundle.getServiceNameResolver())
+                            .asyncExecutor(RevolverBundle.getAsyncExecutor())
                             .traceCollector(trace -> {
                                 //TODO: Put in a publisher if required
                             }).build()
@@ -17,13 +17,17 @@
 
 package io.dropwizard.revolver.core;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixObservableCommand;
 import io.dropwizard.revolver.core.config.ClientConfig;
 import io.dropwizard.revolver.core.config.CommandHandlerConfig;
 import io.dropwizard.revolver.core.config.RevolverServiceConfig;
 import io.dropwizard.revolver.core.config.RuntimeConfig;
+import io.dropwizard.revolver.core.limiter.ConcurrencyLimitExceededException;
+import io.dropwizard.revolver.core.limiter.ConcurrencyLimiter;
 import io.dropwizard.revolver.core.model.RevolverRequest;
 import io.dropwizard.revolver.core.model.RevolverResponse;
 import io.dropwizard.revolver.core.tracing.Trace;
@@ -35,10 +39,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.MDC;
 import rx.Observable;
+import rx.subscriptions.Subscriptions;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -54,11 +65,24 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
     private final Map<String, CommandHandlerConfigType> apiConfigurations;
     private final TraceCollector traceCollector;
     private ClientConfig clientConfiguration;
+    private final Executor asyncExecutor;
+    private final Map<String, HystrixCommand.Setter> setters = new ConcurrentHashMap<>();
+    private final Map<String, HystrixObservableCommand.Setter> observableSetters = new ConcurrentHashMap<>();
+    private final Map<String, Optional<ConcurrencyLimiter>> limiters = new ConcurrentHashMap<>();
+    private final MetricRegistry metrics = new MetricRegistry();
 
     public RevolverCommand(final ContextType context, final ClientConfig clientConfiguration,
                            final RuntimeConfig runtimeConfig, final ServiceConfigurationType serviceConfiguration,
                            final Map<String, CommandHandlerConfigType> apiConfigurations,
                            final TraceCollector traceCollector) {
+        this(context, clientConfiguration, runtimeConfig, serviceConfiguration, apiConfigurations, traceCollector, null);
+    }
+
+    public RevolverCommand(final ContextType context, final ClientConfig clientConfiguration,
+                           final RuntimeConfig runtimeConfig, final ServiceConfigurationType serviceConfiguration,
+                           final Map<String, CommandHandlerConfigType> apiConfigurations,
+                           final TraceCollector traceCollector, final Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
         this.context = context;
         this.clientConfiguration = clientConfiguration;
         this.runtimeConfig = runtimeConfig;
@@ -78,9 +102,23 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
         addContextInfo(request, traceInfo);
         final Stopwatch watch = Stopwatch.createStarted();
         String errorMessage = null;
+        final Cancellation cancellation = new Cancellation();
+        //Taken right before the try that gives it back
+        final ConcurrencyLimiter limiter = limiter(request.getApi());
+        if (limiter != null && !limiter.tryAcquire()) {
+            throw new ConcurrencyLimitExceededException(RevolverCommandHelper.getName(request), limiter.getLimit());
+        }
+        final long admitted = System.nanoTime();
         try {
-            ResponseType response = (ResponseType) new RevolverCommandHandler(RevolverCommandHelper.setter(this, request.getApi()),
-                    this.context, this, normalizedRequest).execute();
+            ResponseType response;
+            if (isNonBlocking()) {
+                response = (ResponseType) new RevolverObservableCommandHandler(observableSetter(request.getApi()),
+                        this.context, this, normalizedRequest).toObservable().toBlocking().single();
+            } else {
+                response = (ResponseType) new RevolverCommandHandler(setter(request.getApi()),
+                        this.context, this, normalizedRequest, cancellation).execute();
+            }
+            release(limiter, admitted, response, null);
             log.debug("Command response: " + response);
             return response;
         } catch (Throwable t) {
@@ -88,7 +126,9 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
             if (rootCause == null) {
                 rootCause = t;
             }
+            release(limiter, admitted, null, rootCause);
             if (rootCause instanceof TimeoutException) {
+                cancellation.cancel();
                 throw (TimeoutException) rootCause;
             }
             errorMessage = rootCause.getLocalizedMessage();
@@ -121,34 +161,64 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
     @SuppressWarnings("unchecked")
     public CompletableFuture<ResponseType> executeAsync(final RequestType request) {
         final RequestType normalizedRequest = RevolverCommandHelper.normalize(request);
+        final ConcurrencyLimiter limiter = limiter(request.getApi());
+        if (limiter != null && !limiter.tryAcquire()) {
+            final CompletableFuture<ResponseType> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new ConcurrencyLimitExceededException(RevolverCommandHelper.getName(request), limiter.getLimit()));
+            return rejected;
+        }
+        final long admitted = System.nanoTime();
         final TraceInfo traceInfo = normalizedRequest.getTrace();
-        addContextInfo(request, traceInfo);
         final Stopwatch watch = Stopwatch.createStarted();
-        final Future<ResponseType> responseFuture = new RevolverCommandHandler(RevolverCommandHelper.setter(this, request.getApi()), this.context, this, normalizedRequest).queue();
-        return CompletableFuture.supplyAsync(() -> {
-                    String errorMessage = null;
-                    try {
-                        return responseFuture.get();
-                    } catch (Throwable t) {
-                        errorMessage = RevolverExceptionHelper.getLeafErrorMessage(t);
-                        throw new RevolverExecutionException(RevolverExecutionException.Type.SERVICE_ERROR, String.format("Error executing command %s", RevolverCommandHelper.getName(request)), RevolverExceptionHelper.getLeafThrowable(t));
-                    } finally {
-                        publishTrace(Trace.builder()
-                                .caller(this.clientConfiguration.getClientName())
-                                .service(this.serviceConfiguration.getService())
-                                .api(request.getApi())
-                                .duration(watch.stop().elapsed(TimeUnit.MILLISECONDS))
-                                .transactionId(traceInfo.getTransactionId())
-                                .requestId(traceInfo.getRequestId())
-                                .parentRequestId(traceInfo.getParentRequestId())
-                                .timestamp(traceInfo.getTimestamp())
-                                .attributes(traceInfo.getAttributes())
-                                .error(!Strings.isNullOrEmpty(errorMessage))
-                                .errorReason(errorMessage).build());
-                        removeContextInfo();
+        final CompletableFuture<ResponseType> response = new CompletableFuture<>();
+        final Cancellation cancellation = new Cancellation();
+        final Observable<ResponseType> observable;
+        try {
+            addContextInfo(request, traceInfo);
+            observable = isNonBlocking() ?
+                    new RevolverObservableCommandHandler(observableSetter(request.getApi()), this.context, this, normalizedRequest).toObservable() :
+                    new RevolverCommandHandler(setter(request.getApi()), this.context, this, normalizedRequest, cancellation).toObservable();
+        } catch (RuntimeException e) {
+            //Nothing got subscribed, so nothing else gives the permit back
+            release(limiter, admitted, null, e);
+            removeContextInfo();
+            throw e;
+        }
+        observable.single().subscribe(result -> {
+            release(limiter, admitted, result, null);
+            response.complete(result);
+        }, t -> {
+            release(limiter, admitted, null, RevolverExceptionHelper.getLeafThrowable(t));
+            response.completeExceptionally(t);
+        });
+        //Move off the hystrix / http client thread before running continuations
+        return response.handleAsync((result, t) -> {
+            String errorMessage = null;
+            try {
+                if (t != null) {
+                    if (RevolverExceptionHelper.getLeafThrowable(t) instanceof TimeoutException) {
+                        cancellation.cancel();
                     }
+                    errorMessage = RevolverExceptionHelper.getLeafErrorMessage(t);
+                    throw new RevolverExecutionException(RevolverExecutionException.Type.SERVICE_ERROR, String.format("Error executing command %s", RevolverCommandHelper.getName(request)), RevolverExceptionHelper.getLeafThrowable(t));
                 }
-        );
+                return result;
+            } finally {
+                publishTrace(Trace.builder()
+                        .caller(this.clientConfiguration.getClientName())
+                        .service(this.serviceConfiguration.getService())
+                        .api(request.getApi())
+                        .duration(watch.stop().elapsed(TimeUnit.MILLISECONDS))
+                        .transactionId(traceInfo.getTransactionId())
+                        .requestId(traceInfo.getRequestId())
+                        .parentRequestId(traceInfo.getParentRequestId())
+                        .timestamp(traceInfo.getTimestamp())
+                        .attributes(traceInfo.getAttributes())
+                        .error(!Strings.isNullOrEmpty(errorMessage))
+                        .errorReason(errorMessage).build());
+                removeContextInfo();
+            }
+        }, getAsyncExecutor());
     }
 
     @SuppressWarnings("unchecked")
@@ -156,7 +226,21 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
         final RequestType normalizedRequest = RevolverCommandHelper.normalize(request);
         final TraceInfo traceInfo = normalizedRequest.getTrace();
         addContextInfo(request, traceInfo);
-        return new RevolverCommandHandler(RevolverCommandHelper.setter(this, request.getApi()), this.context, this, normalizedRequest).toObservable();
+        return new RevolverCommandHandler(setter(request.getApi()), this.context, this, normalizedRequest, new Cancellation()).toObservable();
+    }
+
+    //Timeouts tell the limiter the api is overloaded; fallbacks (null responses) and other failures say nothing about latency
+    private static void release(final ConcurrencyLimiter limiter, final long admitted, final Object response, final Throwable error) {
+        if (limiter == null) {
+            return;
+        }
+        if (error instanceof TimeoutException) {
+            limiter.onDropped();
+        } else if (error != null || response == null) {
+            limiter.onIgnore();
+        } else {
+            limiter.onSuccess(admitted);
+        }
     }
 
     private void publishTrace(Trace build) {
@@ -171,18 +255,99 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
     }
 
 
+
     public boolean isFallbackEnabled() {
         return true;
     }
 
+    /**
+     * Non blocking commands run through {@link #executeNonBlocking} under a semaphore isolated observable command
+     * instead of holding a hystrix pool thread for the duration of the call
+     */
+    public boolean isNonBlocking() {
+        return false;
+    }
+
     protected abstract ResponseType execute(final ContextType context, final RequestType request) throws Exception;
 
+    /**
+     * Blocking execution that can register what should be aborted when hystrix times this execution out
+     */
+    protected ResponseType execute(final ContextType context, final RequestType request, final Cancellation cancellation) throws Exception {
+        return execute(context, request);
+    }
+
+    /**
+     * Runs the blocking {@link #execute(RevolverContext, RevolverRequest)} on the async executor; commands backed by a
+     * client with an async api override this so that no thread waits on the call
+     */
+    protected CompletableFuture<ResponseType> executeNonBlocking(final ContextType context, final RequestType request) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(context, request);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, getAsyncExecutor());
+    }
+
     protected abstract ResponseType fallback(final ContextType context, final RequestType request);
 
     protected ClientConfig getClientConfiguration() {
         return clientConfiguration;
     }
 
+    /**
+     * Hystrix setter for the api; resolved once per command instance, a config reload builds new commands
+     */
+    public HystrixCommand.Setter setter(final String api) {
+        return setters.computeIfAbsent(api, key -> RevolverCommandHelper.setter(this, key));
+    }
+
+    public HystrixObservableCommand.Setter observableSetter(final String api) {
+        return observableSetters.computeIfAbsent(api, key -> RevolverCommandHelper.observableSetter(this, key));
+    }
+
+    /**
+     * Adaptive concurrency limiter of the api; null when the api (or its service) doesn't have a concurrency limit.
+     * Like setters, limiters live as long as the command, so a reload starts over from the initial limit.
+     */
+    public ConcurrencyLimiter limiter(final String api) {
+        return limiters.computeIfAbsent(api, key -> Optional.ofNullable(RevolverCommandHelper.concurrencyLimitConfig(this, key))
+                .map(config -> new ConcurrencyLimiter(serviceConfiguration.getService() + "." + key, config, getMetrics())))
+                .orElse(null);
+    }
+
+    /**
+     * Registry limiter metrics go to; commands that run inside the bundle publish to the application's registry
+     */
+    protected MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Resolves the hystrix setters and limiters of all configured apis up front so that the request path only does a map lookup
+     */
+    public void prepare() {
+        apiConfigurations.keySet().forEach(api -> {
+            if (isNonBlocking()) {
+                observableSetter(api);
+            } else {
+                setter(api);
+            }
+            limiter(api);
+        });
+    }
+
+    /**
+     * Executor for continuations of {@link #executeAsync}; falls back to the common pool when none is configured
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor == null ? ForkJoinPool.commonPool() : asyncExecutor;
+    }
+
     public RuntimeConfig getRuntimeConfig() {
         return this.runtimeConfig;
     }
@@ -201,17 +366,19 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
         private final RevolverCommand<RequestType, ResponseType, ContextType, ServiceConfigurationType, CommandHandlerConfigurationType> handler;
         private final RequestType request;
         private final ContextType context;
+        private final Cancellation cancellation;
 
-        RevolverCommandHandler(final HystrixCommand.Setter setter, final ContextType context, final RevolverCommand<RequestType, ResponseType, ContextType, ServiceConfigurationType, CommandHandlerConfigurationType> handler, final RequestType request) {
+        RevolverCommandHandler(final HystrixCommand.Setter setter, final ContextType context, final RevolverCommand<RequestType, ResponseType, ContextType, ServiceConfigurationType, CommandHandlerConfigurationType> handler, final RequestType request, final Cancellation cancellation) {
             super(setter);
             this.context = context;
             this.handler = handler;
             this.request = request;
+            this.cancellation = cancellation;
         }
 
         @Override
         protected ResponseType run() throws Exception {
-            return this.handler.execute(this.context, this.request);
+            return this.handler.execute(this.context, this.request, this.cancellation);
         }
 
         @Override
@@ -220,4 +387,70 @@ public abstract class RevolverCommand<RequestType extends RevolverRequest, Respo
         }
     }
 
+    private static class RevolverObservableCommandHandler<RequestType extends RevolverRequest, ResponseType extends RevolverResponse, ContextType extends RevolverContext, ServiceConfigurationType extends RevolverServiceConfig, CommandHandlerConfigurationType extends CommandHandlerConfig>
+            extends HystrixObservableCommand<ResponseType> {
+        private final RevolverCommand<RequestType, ResponseType, ContextType, ServiceConfigurationType, CommandHandlerConfigurationType> handler;
+        private final RequestType request;
+        private final ContextType context;
+
+        RevolverObservableCommandHandler(final HystrixObservableCommand.Setter setter, final ContextType context, final RevolverCommand<RequestType, ResponseType, ContextType, ServiceConfigurationType, CommandHandlerConfigurationType> handler, final RequestType request) {
+            super(setter);
+            this.context = context;
+            this.handler = handler;
+            this.request = request;
+        }
+
+        @Override
+        protected Observable<ResponseType> construct() {
+            return Observable.create((Observable.OnSubscribe<ResponseType>) subscriber -> {
+                final CompletableFuture<ResponseType> response;
+                try {
+                    response = this.handler.executeNonBlocking(this.context, this.request);
+                } catch (Exception e) {
+                    subscriber.onError(e);
+                    return;
+                }
+                //Hystrix unsubscribes on timeout; cancelling the future lets the command abort the in-flight call
+                subscriber.add(Subscriptions.create(() -> response.cancel(true)));
+                response.whenComplete((result, error) -> {
+                    if (subscriber.isUnsubscribed()) {
+                        return;
+                    }
+                    if (error != null) {
+                        subscriber.onError(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    } else {
+                        subscriber.onNext(result);
+                        subscriber.onCompleted();
+                    }
+                });
+            });
+        }
+
+        @Override
+        protected Observable<ResponseType> resumeWithFallback() {
+            return Observable.defer(() -> Observable.just(this.handler.fallback(this.context, this.request)));
+        }
+    }
+
+    /**
+     * Aborts what a single execution still has in flight once hystrix has timed it out
+     */
+    public static class Cancellation {
+        private final List<Runnable> actions = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        public void onCancel(final Runnable action) {
+            actions.add(action);
+            //Timed out before the action was registered
+            if (cancelled) {
+                action.run();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            actions.forEach(Runnable::run);
+        }
+    }
+
 }
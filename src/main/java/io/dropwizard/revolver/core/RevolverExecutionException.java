@@ -49,7 +49,8 @@ public class RevolverExecutionException extends RuntimeException {
     public enum Type {
         SERVICE_ERROR,
         DOWNSTREAM_SERVICE_CALL_FAILURE,
-        BAD_REQUEST;
+        BAD_REQUEST,
+        SERVICE_UNAVAILABLE;
 
         Type() {
         }
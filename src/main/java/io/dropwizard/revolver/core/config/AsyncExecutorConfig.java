@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Executor that runs continuations of async command executions (response handling, persistence)
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AsyncExecutorConfig {
+
+    @Min(1)
+    @Builder.Default
+    private int concurrency = 32;
+
+    @Min(1)
+    @Builder.Default
+    private int maxQueueSize = 1000;
+
+    /**
+     * Seconds after which idle threads exit; they are started again as work comes in
+     */
+    @Min(1)
+    @Builder.Default
+    private int keepAliveInSeconds = 60;
+}
@@ -18,6 +18,7 @@
 package io.dropwizard.revolver.core.config;
 
 import io.dropwizard.revolver.core.config.hystrix.CircuitBreakerConfig;
+import io.dropwizard.revolver.core.config.hystrix.ConcurrencyLimitConfig;
 import io.dropwizard.revolver.core.config.hystrix.ThreadPoolConfig;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -36,4 +37,6 @@ public class HystrixCommandConfig {
     private ThreadPoolConfig threadPool = new ThreadPoolConfig();
 
     private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
+    private ConcurrencyLimitConfig concurrencyLimit = new ConcurrencyLimitConfig();
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+/**
+ * Priority based shedding of requests at the gateway, before they are dispatched
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LoadSheddingConfig {
+
+    @Builder.Default
+    private boolean enabled = false;
+
+    /**
+     * Requests the gateway has in flight at full capacity; lower priority classes are shed at a fraction of it
+     */
+    @Min(1)
+    @Builder.Default
+    private int maxInflight = 1000;
+
+    /**
+     * System cpu load (0 - 1) from which low priority requests are shed; normal priority ones are shed halfway
+     * between it and full load. 1 turns cpu based shedding off.
+     */
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    @Builder.Default
+    private double cpuThreshold = 0.9;
+
+    /**
+     * Whether the priority header of a request may override its api's priority; only turn this on when an edge
+     * in front of the gateway sets (or strips) the header
+     */
+    @Builder.Default
+    private boolean priorityHeaderTrusted = false;
+}
@@ -28,6 +28,7 @@ import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.List;
 
@@ -92,6 +93,23 @@ public class RevolverConfig {
     @Setter
     private String dynamicConfigUrl = null;
 
+    @Getter
+    @Setter
+    @Min(0)
+    private int routeCacheSize = 10000;
+
+    @NotNull
+    @Valid
+    @Getter
+    @Setter
+    private AsyncExecutorConfig asyncExecutor = new AsyncExecutorConfig();
+
+    @NotNull
+    @Valid
+    @Getter
+    @Setter
+    private LoadSheddingConfig loadShedding = new LoadSheddingConfig();
+
 
     @Builder
     public RevolverConfig(ClientConfig clientConfig, RuntimeConfig global,
@@ -117,5 +135,7 @@ public class RevolverConfig {
         this.dynamicConfig = false;
         this.configPollIntervalSeconds = 600;
         this.dynamicConfigUrl = null;
+        this.routeCacheSize = 10000;
+        this.asyncExecutor = new AsyncExecutorConfig();
     }
 }
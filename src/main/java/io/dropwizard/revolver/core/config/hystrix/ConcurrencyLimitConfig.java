@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.config.hystrix;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+
+/**
+ * Adaptive (TCP Vegas style) limit on calls in flight for an api. The limit grows while the estimated queue
+ * (limit * (1 - minRtt / rtt)) stays below alpha, shrinks once it goes above beta and backs off on timeouts;
+ * calls over the limit are rejected straight away.
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ConcurrencyLimitConfig {
+
+    @Builder.Default
+    private boolean enabled = false;
+
+    @Min(1)
+    @Builder.Default
+    private int initialLimit = 20;
+
+    @Min(1)
+    @Builder.Default
+    private int minLimit = 1;
+
+    @Min(1)
+    @Builder.Default
+    private int maxLimit = 200;
+
+    @Min(0)
+    @Builder.Default
+    private int alpha = 3;
+
+    @Min(1)
+    @Builder.Default
+    private int beta = 6;
+
+    /**
+     * Multiplier applied to the limit when a call times out
+     */
+    @DecimalMin("0.1")
+    @DecimalMax("1.0")
+    @Builder.Default
+    private double backoffRatio = 0.9;
+
+    /**
+     * Milliseconds after which the no load rtt is measured afresh, so that the limit follows backends getting slower
+     */
+    @Min(1000)
+    @Builder.Default
+    private long probeInterval = 60000;
+}
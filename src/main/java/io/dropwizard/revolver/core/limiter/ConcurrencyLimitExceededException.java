@@ -0,0 +1,31 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+import io.dropwizard.revolver.core.RevolverExecutionException;
+
+/**
+ * Thrown when an api is at its concurrency limit; the call was never made
+ * @author phaneesh
+ */
+public class ConcurrencyLimitExceededException extends RevolverExecutionException {
+
+    public ConcurrencyLimitExceededException(final String name, final int limit) {
+        super(Type.SERVICE_UNAVAILABLE, "Concurrency limit " + limit + " reached for " + name);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.revolver.core.config.hystrix.ConcurrencyLimitConfig;
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit on calls in flight for a service.api that adapts to observed latency; see {@link ConcurrencyLimitConfig}.
+ * Every successful {@link #tryAcquire()} must be followed by exactly one of {@link #onSuccess(long)},
+ * {@link #onDropped()} or {@link #onIgnore()}.
+ * @author phaneesh
+ */
+public class ConcurrencyLimiter {
+
+    private final ConcurrencyLimitConfig config;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final Meter rejected;
+
+    @Getter
+    private volatile int limit;
+
+    //Guarded by this
+    private long noLoadRtt;
+
+    //Lowest rtt of the current probe window; 0 until the window has a sample
+    private long windowRtt;
+
+    private long probeAt;
+
+    public ConcurrencyLimiter(final String name, final ConcurrencyLimitConfig config, final MetricRegistry metrics) {
+        this.config = config;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getInitialLimit(), config.getMaxLimit()));
+        this.rejected = metrics.meter(MetricRegistry.name("revolver", "limiter", name, "rejected"));
+        gauge(metrics, MetricRegistry.name("revolver", "limiter", name, "limit"), this::getLimit);
+        gauge(metrics, MetricRegistry.name("revolver", "limiter", name, "inflight"), this::getInflight);
+    }
+
+    private static void gauge(final MetricRegistry metrics, final String name, final Gauge<Integer> gauge) {
+        //A config reload builds new commands (and limiters) for the same apis
+        metrics.remove(name);
+        metrics.register(name, gauge);
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            final int current = inflight.get();
+            if (current >= limit) {
+                rejected.mark();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Call completed; its latency is a sample for the limit
+     * @param startNanos {@link System#nanoTime()} when the call was admitted
+     */
+    public void onSuccess(final long startNanos) {
+        final int current = inflight.getAndDecrement();
+        update(System.nanoTime() - startNanos, current, false);
+    }
+
+    /**
+     * Call timed out: a sign of overload, the limit backs off
+     */
+    public void onDropped() {
+        final int current = inflight.getAndDecrement();
+        update(0, current, true);
+    }
+
+    /**
+     * Call failed for a reason that says nothing about load
+     */
+    public void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    private synchronized void update(final long rtt, final int inflightAtCompletion, final boolean dropped) {
+        if (dropped) {
+            limit = Math.max(config.getMinLimit(), (int) (limit * config.getBackoffRatio()));
+            return;
+        }
+        final long now = System.nanoTime();
+        final long sample = Math.max(rtt, 1);
+        windowRtt = windowRtt == 0 ? sample : Math.min(windowRtt, sample);
+        //The no load rtt is taken afresh from the lowest rtt of the window just ended, not from whatever (possibly
+        //loaded) call completes at probe time, so that it follows a backend getting slower without jumping with load
+        if (noLoadRtt == 0 || now - probeAt >= 0) {
+            noLoadRtt = windowRtt;
+            windowRtt = 0;
+            probeAt = now + TimeUnit.MILLISECONDS.toNanos(config.getProbeInterval());
+            return;
+        }
+        if (sample < noLoadRtt) {
+            noLoadRtt = sample;
+            return;
+        }
+        //Don't grow a limit that isn't being used
+        if (inflightAtCompletion * 2 < limit) {
+            return;
+        }
+        final int queue = (int) Math.ceil(limit * (1 - (double) noLoadRtt / sample));
+        if (queue <= config.getAlpha()) {
+            limit = Math.min(config.getMaxLimit(), limit + 1);
+        } else if (queue >= config.getBeta()) {
+            limit = Math.max(config.getMinLimit(), limit - 1);
+        }
+    }
+}
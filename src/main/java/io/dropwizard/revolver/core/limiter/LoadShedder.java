@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Enums;
+import com.google.common.base.Strings;
+import io.dropwizard.revolver.core.config.LoadSheddingConfig;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Admission of requests at the gateway by priority class. A class is shed once the requests in flight reach its share
+ * of maxInflight, or (for low and normal priority) once cpu load passes its threshold, so that batch traffic goes
+ * before critical calls do. Every admitted request must be {@link #release() released}.
+ * @author phaneesh
+ */
+public class LoadShedder {
+
+    private static final long CPU_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final LoadSheddingConfig config;
+
+    private final DoubleSupplier cpuLoad;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final Map<RequestPriority, Meter> shed = new EnumMap<>(RequestPriority.class);
+
+    private volatile double cpu;
+
+    private volatile long cpuSampledAt = System.nanoTime() - CPU_SAMPLE_INTERVAL;
+
+    public LoadShedder(final LoadSheddingConfig config, final MetricRegistry metrics) {
+        this(config, metrics, systemCpuLoad());
+    }
+
+    LoadShedder(final LoadSheddingConfig config, final MetricRegistry metrics, final DoubleSupplier cpuLoad) {
+        this.config = config;
+        this.cpuLoad = cpuLoad;
+        for (RequestPriority priority : RequestPriority.values()) {
+            shed.put(priority, metrics.meter(MetricRegistry.name("revolver", "shed", priority.name().toLowerCase())));
+        }
+        final String name = MetricRegistry.name("revolver", "shed", "inflight");
+        metrics.remove(name);
+        metrics.register(name, (Gauge<Integer>) inflight::get);
+    }
+
+    private static DoubleSupplier systemCpuLoad() {
+        final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os)::getSystemCpuLoad;
+        }
+        return () -> -1;
+    }
+
+    /**
+     * Priority of a request: that of its api, unless the priority header is trusted and names a priority class
+     */
+    public RequestPriority priority(final RequestPriority configured, final String header) {
+        if (config.isPriorityHeaderTrusted() && !Strings.isNullOrEmpty(header)) {
+            final RequestPriority requested = Enums.getIfPresent(RequestPriority.class, header.trim().toUpperCase()).orNull();
+            if (requested != null) {
+                return requested;
+            }
+        }
+        return configured == null ? RequestPriority.NORMAL : configured;
+    }
+
+    /**
+     * @return false if the request is to be shed
+     */
+    public boolean tryAcquire(final RequestPriority priority) {
+        final RequestPriority requestPriority = priority == null ? RequestPriority.NORMAL : priority;
+        if (overloadedCpu(requestPriority)) {
+            shed.get(requestPriority).mark();
+            return false;
+        }
+        final int limit = (int) Math.ceil(config.getMaxInflight() * requestPriority.getShare());
+        while (true) {
+            final int current = inflight.get();
+            if (current >= limit) {
+                shed.get(requestPriority).mark();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    private boolean overloadedCpu(final RequestPriority priority) {
+        if (config.getCpuThreshold() >= 1.0 || (priority != RequestPriority.LOW && priority != RequestPriority.NORMAL)) {
+            return false;
+        }
+        final double load = cpu();
+        if (load < 0) {
+            return false;
+        }
+        final double threshold = priority == RequestPriority.LOW ? config.getCpuThreshold()
+                : config.getCpuThreshold() + (1.0 - config.getCpuThreshold()) / 2;
+        return load >= threshold;
+    }
+
+    //Sampling the os is not free; once a second is plenty for a shedding signal
+    private double cpu() {
+        final long now = System.nanoTime();
+        if (now - cpuSampledAt >= CPU_SAMPLE_INTERVAL) {
+            cpuSampledAt = now;
+            cpu = cpuLoad.getAsDouble();
+        }
+        return cpu;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+/**
+ * Priority class of gateway traffic; under overload lower classes are shed first. share is the fraction of the
+ * gateway's in flight capacity a class may still be admitted into.
+ * @author phaneesh
+ */
+public enum RequestPriority {
+    CRITICAL(1.0),
+    HIGH(0.95),
+    NORMAL(0.8),
+    LOW(0.6);
+
+    private final double share;
+
+    RequestPriority(final double share) {
+        this.share = share;
+    }
+
+    public double getShare() {
+        return share;
+    }
+}
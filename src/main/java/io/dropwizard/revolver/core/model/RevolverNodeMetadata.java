@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.model;
+
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import io.dropwizard.revolver.discovery.RevolverServiceResolver;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A discovered node as registered in ranger, along with the gateway's view of it (latency, load and ejection)
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RevolverNodeMetadata {
+
+    private String host;
+
+    private int port;
+
+    private RevolverServiceResolver.ShardInfo nodeData;
+
+    private HealthcheckStatus healthcheckStatus;
+
+    private long lastUpdatedTimeStamp;
+
+    private double latency;
+
+    private int inflight;
+
+    private int consecutiveFailures;
+
+    private boolean ejected;
+
+    private long ejectedUntil;
+
+    private int ejections;
+}
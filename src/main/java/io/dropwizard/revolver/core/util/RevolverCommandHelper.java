@@ -26,6 +26,7 @@ import io.dropwizard.revolver.core.config.CommandHandlerConfig;
 import io.dropwizard.revolver.core.config.RevolverServiceConfig;
 import io.dropwizard.revolver.core.config.RuntimeConfig;
 import io.dropwizard.revolver.core.config.hystrix.CircuitBreakerConfig;
+import io.dropwizard.revolver.core.config.hystrix.ConcurrencyLimitConfig;
 import io.dropwizard.revolver.core.config.hystrix.MetricsConfig;
 import io.dropwizard.revolver.core.config.hystrix.ThreadPoolConfig;
 import io.dropwizard.revolver.core.model.RevolverRequest;
@@ -62,61 +63,119 @@ public class RevolverCommandHelper {
     }
 
     public static HystrixCommand.Setter setter(final RevolverCommand commandHandler, final String api) {
-        final RuntimeConfig runtimeConfig = commandHandler.getRuntimeConfig();
         final RevolverServiceConfig serviceConfiguration = commandHandler.getServiceConfiguration();
         final CommandHandlerConfig config = (CommandHandlerConfig) commandHandler.getApiConfigurations().get(api);
-        CircuitBreakerConfig circuitBreakerConfig;
+        final ThreadPoolConfig threadPoolConfig = threadPoolConfig(commandHandler, config);
+        final MetricsConfig metricsConfig = metricsConfig(commandHandler);
+        final String keyName = keyName(commandHandler, config, api);
+        return HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory
+                .asKey(serviceConfiguration.getService()))
+                .andCommandPropertiesDefaults(commandProperties(commandHandler, config, threadPoolConfig, metricsConfig,
+                        threadPoolConfig.isSemaphoreIsolated()))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(keyName)).andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(keyName))
+                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter()
+                        .withCoreSize(threadPoolConfig.getConcurrency()).withMaxQueueSize(threadPoolConfig.getMaxRequestQueueSize())
+                        .withQueueSizeRejectionThreshold(threadPoolConfig.getDynamicRequestQueueSize())
+                        .withMetricsRollingStatisticalWindowBuckets(metricsConfig.getStatsBucketSize())
+                        .withMetricsRollingStatisticalWindowInMilliseconds(metricsConfig.getStatsTimeInMillis()));
+    }
+
+    /**
+     * Setter for non blocking commands; these are always semaphore isolated since no thread is held for the call
+     */
+    public static HystrixObservableCommand.Setter observableSetter(final RevolverCommand commandHandler, final String api) {
+        final RevolverServiceConfig serviceConfiguration = commandHandler.getServiceConfiguration();
+        final CommandHandlerConfig config = (CommandHandlerConfig) commandHandler.getApiConfigurations().get(api);
+        final ThreadPoolConfig threadPoolConfig = threadPoolConfig(commandHandler, config);
+        final MetricsConfig metricsConfig = metricsConfig(commandHandler);
+        return HystrixObservableCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory
+                .asKey(serviceConfiguration.getService()))
+                .andCommandPropertiesDefaults(commandProperties(commandHandler, config, threadPoolConfig, metricsConfig, true))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(keyName(commandHandler, config, api)));
+    }
+
+    /**
+     * Execution timeout (ms) that hystrix enforces for the api
+     */
+    public static int getTimeout(final RevolverCommand commandHandler, final String api) {
+        return threadPoolConfig(commandHandler, (CommandHandlerConfig) commandHandler.getApiConfigurations().get(api)).getTimeout();
+    }
+
+    /**
+     * Concurrency limit of the api: the api's own when enabled, else the service's when enabled, else none (null)
+     */
+    public static ConcurrencyLimitConfig concurrencyLimitConfig(final RevolverCommand commandHandler, final String api) {
+        final CommandHandlerConfig config = (CommandHandlerConfig) commandHandler.getApiConfigurations().get(api);
+        if (null != config && null != config.getRuntime() && null != config.getRuntime().getConcurrencyLimit()
+                && config.getRuntime().getConcurrencyLimit().isEnabled()) {
+            return config.getRuntime().getConcurrencyLimit();
+        }
+        final RevolverServiceConfig serviceConfiguration = commandHandler.getServiceConfiguration();
+        if (null != serviceConfiguration.getRuntime() && null != serviceConfiguration.getRuntime().getConcurrencyLimit()
+                && serviceConfiguration.getRuntime().getConcurrencyLimit().isEnabled()) {
+            return serviceConfiguration.getRuntime().getConcurrencyLimit();
+        }
+        return null;
+    }
+
+    private static HystrixCommandProperties.Setter commandProperties(final RevolverCommand commandHandler, final CommandHandlerConfig config,
+                                                                     final ThreadPoolConfig threadPoolConfig, final MetricsConfig metricsConfig,
+                                                                     final boolean semaphoreIsolated) {
+        final CircuitBreakerConfig circuitBreakerConfig = circuitBreakerConfig(commandHandler, config);
+        return HystrixCommandProperties.Setter()
+                .withExecutionIsolationStrategy(semaphoreIsolated ? HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE : HystrixCommandProperties.ExecutionIsolationStrategy.THREAD)
+                .withExecutionIsolationSemaphoreMaxConcurrentRequests(threadPoolConfig.getConcurrency())
+                .withFallbackIsolationSemaphoreMaxConcurrentRequests(threadPoolConfig.getConcurrency())
+                .withFallbackEnabled(commandHandler.isFallbackEnabled())
+                .withCircuitBreakerErrorThresholdPercentage(circuitBreakerConfig.getErrorThresholdPercentage())
+                .withCircuitBreakerRequestVolumeThreshold(circuitBreakerConfig.getNumAcceptableFailuresInTimeWindow())
+                .withCircuitBreakerSleepWindowInMilliseconds(circuitBreakerConfig.getWaitTimeBeforeRetry())
+                .withExecutionTimeoutInMilliseconds(threadPoolConfig.getTimeout())
+                .withMetricsHealthSnapshotIntervalInMilliseconds(metricsConfig.getHealthCheckInterval())
+                .withMetricsRollingPercentileBucketSize(metricsConfig.getPercentileBucketSize())
+                .withMetricsRollingPercentileWindowInMilliseconds(metricsConfig.getPercentileTimeInMillis());
+    }
+
+    private static CircuitBreakerConfig circuitBreakerConfig(final RevolverCommand commandHandler, final CommandHandlerConfig config) {
+        final RuntimeConfig runtimeConfig = commandHandler.getRuntimeConfig();
+        final RevolverServiceConfig serviceConfiguration = commandHandler.getServiceConfiguration();
         if(null != runtimeConfig) {
-            circuitBreakerConfig = runtimeConfig.getCircuitBreaker();
+            return runtimeConfig.getCircuitBreaker();
         } else if (null != config.getRuntime() && null != config.getRuntime().getCircuitBreaker()) {
-            circuitBreakerConfig = config.getRuntime().getCircuitBreaker();
+            return config.getRuntime().getCircuitBreaker();
         } else if (null != serviceConfiguration.getRuntime() && null != serviceConfiguration.getRuntime().getCircuitBreaker()) {
-            circuitBreakerConfig = serviceConfiguration.getRuntime().getCircuitBreaker();
-        } else {
-            circuitBreakerConfig = new CircuitBreakerConfig();
+            return serviceConfiguration.getRuntime().getCircuitBreaker();
+        }
+        return new CircuitBreakerConfig();
+    }
+
+    private static ThreadPoolConfig threadPoolConfig(final RevolverCommand commandHandler, final CommandHandlerConfig config) {
+        final RuntimeConfig runtimeConfig = commandHandler.getRuntimeConfig();
+        final RevolverServiceConfig serviceConfiguration = commandHandler.getServiceConfiguration();
+        if(config.isSharedPool()) {
+            return serviceConfiguration.getRuntime().getThreadPool();
         }
-        ThreadPoolConfig threadPoolConfig;
         if(null != config.getRuntime() && null != config.getRuntime().getThreadPool()) {
-            threadPoolConfig = config.getRuntime().getThreadPool();
+            return config.getRuntime().getThreadPool();
         } else if (null != serviceConfiguration.getRuntime() && null != serviceConfiguration.getRuntime().getThreadPool()) {
-            threadPoolConfig = serviceConfiguration.getRuntime().getThreadPool();
+            return serviceConfiguration.getRuntime().getThreadPool();
         } else if(null != runtimeConfig) {
-            threadPoolConfig = runtimeConfig.getThreadPool();
-        } else {
-            threadPoolConfig = new ThreadPoolConfig();
+            return runtimeConfig.getThreadPool();
         }
-        MetricsConfig metricsConfig;
+        return new ThreadPoolConfig();
+    }
+
+    private static MetricsConfig metricsConfig(final RevolverCommand commandHandler) {
+        final RuntimeConfig runtimeConfig = commandHandler.getRuntimeConfig();
         if(null != runtimeConfig) {
-            metricsConfig = runtimeConfig.getMetrics();
-        } else {
-            metricsConfig = new MetricsConfig();
+            return runtimeConfig.getMetrics();
         }
-        if(config.isSharedPool()) {
-            threadPoolConfig = serviceConfiguration.getRuntime().getThreadPool();
-        }
-        final String keyName = config.isSharedPool() ?
+        return new MetricsConfig();
+    }
+
+    private static String keyName(final RevolverCommand commandHandler, final CommandHandlerConfig config, final String api) {
+        return config.isSharedPool() ?
                 Joiner.on(".").join(commandHandler.getServiceConfiguration().getService(), "shared") :
                 Joiner.on(".").join(commandHandler.getServiceConfiguration().getService(), api);
-
-        return HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory
-                .asKey(serviceConfiguration.getService()))
-                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
-                        .withExecutionIsolationStrategy(threadPoolConfig.isSemaphoreIsolated() ? HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE : HystrixCommandProperties.ExecutionIsolationStrategy.THREAD)
-                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(threadPoolConfig.getConcurrency())
-                        .withFallbackIsolationSemaphoreMaxConcurrentRequests(threadPoolConfig.getConcurrency())
-                        .withFallbackEnabled(commandHandler.isFallbackEnabled())
-                        .withCircuitBreakerErrorThresholdPercentage(circuitBreakerConfig.getErrorThresholdPercentage())
-                        .withCircuitBreakerRequestVolumeThreshold(circuitBreakerConfig.getNumAcceptableFailuresInTimeWindow())
-                        .withCircuitBreakerSleepWindowInMilliseconds(circuitBreakerConfig.getWaitTimeBeforeRetry())
-                        .withExecutionTimeoutInMilliseconds(threadPoolConfig.getTimeout())
-                        .withMetricsHealthSnapshotIntervalInMilliseconds(metricsConfig.getHealthCheckInterval())
-                        .withMetricsRollingPercentileBucketSize(metricsConfig.getPercentileBucketSize())
-                        .withMetricsRollingPercentileWindowInMilliseconds(metricsConfig.getPercentileTimeInMillis()))
-                .andCommandKey(HystrixCommandKey.Factory.asKey(keyName)).andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(keyName))
-                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter()
-                        .withCoreSize(threadPoolConfig.getConcurrency()).withMaxQueueSize(threadPoolConfig.getMaxRequestQueueSize())
-                        .withQueueSizeRejectionThreshold(threadPoolConfig.getDynamicRequestQueueSize())
-                        .withMetricsRollingStatisticalWindowBuckets(metricsConfig.getStatsBucketSize())
-                        .withMetricsRollingStatisticalWindowInMilliseconds(metricsConfig.getStatsTimeInMillis()));
     }
 }
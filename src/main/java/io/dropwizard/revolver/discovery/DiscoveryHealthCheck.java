@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import java.util.Set;
+
+/**
+ * Unhealthy while discovered services are still loading their nodes, so that load balancers hold traffic back
+ * until the startup timeout
+ * @author phaneesh
+ */
+public class DiscoveryHealthCheck extends HealthCheck {
+
+    private final RevolverServiceResolver resolver;
+
+    public DiscoveryHealthCheck(final RevolverServiceResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    protected Result check() {
+        final Set<String> cold = resolver.coldServices();
+        if (cold.isEmpty()) {
+            return Result.healthy();
+        }
+        if (resolver.isReady()) {
+            return Result.healthy("Serving without nodes loaded for: %s", cold);
+        }
+        return Result.unhealthy("Discovery warming up for: %s", cold);
+    }
+}
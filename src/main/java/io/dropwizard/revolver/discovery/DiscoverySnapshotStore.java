@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.google.common.base.Strings;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last known healthy nodes of discovered services, kept in a small binary file so that a restarting gateway can route
+ * before (or without) ZooKeeper. Files are replaced atomically; a missing or unreadable file is an empty store.
+ * @author phaneesh
+ */
+@Slf4j
+class DiscoverySnapshotStore {
+
+    private static final int MAGIC = 0x52565344;
+
+    private static final int VERSION = 1;
+
+    private final Path path;
+
+    DiscoverySnapshotStore(final Path path) {
+        this.path = path;
+    }
+
+    Map<String, StoredService> load() {
+        if (!Files.isRegularFile(path)) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Ignoring discovery snapshot {}: unknown format", path);
+                return Collections.emptyMap();
+            }
+            final int services = in.readInt();
+            final Map<String, StoredService> stored = new HashMap<>(services);
+            for (int i = 0; i < services; i++) {
+                final String service = in.readUTF();
+                final String environment = in.readUTF();
+                final long confirmedAt = in.readLong();
+                final int count = in.readInt();
+                final List<StoredNode> nodes = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    nodes.add(new StoredNode(in.readUTF(), in.readInt(), nullable(in.readUTF()), nullable(in.readUTF()), nullable(in.readUTF())));
+                }
+                stored.put(service, new StoredService(environment, confirmedAt, nodes));
+            }
+            return stored;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable discovery snapshot {}: {}", path, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    void save(final Map<String, StoredService> services) throws IOException {
+        final Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        final Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(services.size());
+                for (Map.Entry<String, StoredService> service : services.entrySet()) {
+                    out.writeUTF(service.getKey());
+                    out.writeUTF(Strings.nullToEmpty(service.getValue().getEnvironment()));
+                    out.writeLong(service.getValue().getConfirmedAt());
+                    out.writeInt(service.getValue().getNodes().size());
+                    for (StoredNode node : service.getValue().getNodes()) {
+                        out.writeUTF(node.getHost());
+                        out.writeInt(node.getPort());
+                        out.writeUTF(Strings.nullToEmpty(node.getRegion()));
+                        out.writeUTF(Strings.nullToEmpty(node.getZone()));
+                        out.writeUTF(Strings.nullToEmpty(node.getRack()));
+                    }
+                }
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String nullable(final String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    @Value
+    static class StoredService {
+        private String environment;
+        private long confirmedAt;
+        private List<StoredNode> nodes;
+    }
+
+    @Value
+    static class StoredNode {
+        private String host;
+        private int port;
+        private String region;
+        private String zone;
+        private String rack;
+    }
+}
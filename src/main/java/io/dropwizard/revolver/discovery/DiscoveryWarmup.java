@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import io.dropwizard.lifecycle.Managed;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds up application startup (and so the opening of connectors) until discovered services have loaded their nodes,
+ * or the discovery startup timeout passes
+ * @author phaneesh
+ */
+@Slf4j
+public class DiscoveryWarmup implements Managed {
+
+    private final RevolverServiceResolver resolver;
+
+    public DiscoveryWarmup(final RevolverServiceResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void start() throws Exception {
+        final long start = System.currentTimeMillis();
+        if (resolver.awaitReady()) {
+            log.info("Discovery warm in {} ms", System.currentTimeMillis() - start);
+        } else {
+            log.warn("Starting with cold discovery for services: {}", resolver.coldServices());
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.model.ServiceNode;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Immutable view of the healthy endpoints of a discovered service (for its environment). Rebuilt off the request path
+ * and swapped in only when the finder's view changes, so that resolving is a single volatile read.
+ * Nodes local to the gateway are preferred: the most specific locality tier (rack, zone, region) that is healthy
+ * enough and large enough is used and traffic spills over to all healthy nodes only when none is.
+ * While ZooKeeper is unreachable (or the finder is still starting up) an empty answer from the finder doesn't replace
+ * the last known nodes, which may have been seeded from the on disk snapshot.
+ * @author phaneesh
+ */
+class EndpointSnapshot {
+
+    private static final Comparator<Endpoint> ORDER = Comparator.comparing(Endpoint::getHost).thenComparingInt(Endpoint::getPort);
+
+    private static final Comparator<DiscoverySnapshotStore.StoredNode> NODE_ORDER = Comparator.comparing(DiscoverySnapshotStore.StoredNode::getHost)
+            .thenComparingInt(DiscoverySnapshotStore.StoredNode::getPort);
+
+    //How long after registration (or a finder swap) an empty finder is taken to be one that hasn't loaded yet
+    private static final long STARTUP_GRACE_MILLIS = 30000;
+
+    @Getter
+    private volatile SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder;
+
+    @Getter
+    private final String environment;
+
+    private final RevolverServiceResolver.ShardInfo criteria;
+
+    @Getter
+    private final Locality locality;
+
+    private final int localityThreshold;
+
+    private final Meter local;
+
+    private final Meter remote;
+
+    private final BooleanSupplier connected;
+
+    //When the current finder was handed in; until it has had time to load, an empty answer from it isn't believed
+    private volatile long finderSince = System.currentTimeMillis();
+
+    private volatile View view;
+
+    //When the nodes were last confirmed by the finder (or, for a seeded snapshot, when they were persisted)
+    @Getter
+    private volatile long confirmedAt;
+
+    EndpointSnapshot(final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder, final String service, final String environment,
+                     final Locality locality, final int localityThreshold, final MetricRegistry metrics) {
+        this(finder, service, environment, locality, localityThreshold, metrics, () -> true);
+    }
+
+    EndpointSnapshot(final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder, final String service, final String environment,
+                     final Locality locality, final int localityThreshold, final MetricRegistry metrics, final BooleanSupplier connected) {
+        this.finder = finder;
+        this.environment = environment;
+        this.criteria = new RevolverServiceResolver.ShardInfo(environment);
+        this.locality = locality == null ? Locality.NONE : locality;
+        this.localityThreshold = localityThreshold;
+        this.connected = connected;
+        this.local = metrics.meter(MetricRegistry.name("revolver", "discovery", service, "local"));
+        this.remote = metrics.meter(MetricRegistry.name("revolver", "discovery", service, "remote"));
+        final String staleness = MetricRegistry.name("revolver", "discovery", service, "staleness");
+        metrics.remove(staleness);
+        metrics.register(staleness, (Gauge<Long>) () -> confirmedAt == 0 ? -1 : System.currentTimeMillis() - confirmedAt);
+    }
+
+    /**
+     * Starts out with nodes persisted by an earlier run, until the finder has something to say
+     */
+    synchronized void seed(final List<DiscoverySnapshotStore.StoredNode> nodes, final long persistedAt) {
+        if (view != null) {
+            return;
+        }
+        final List<ServiceNode<RevolverServiceResolver.ShardInfo>> seeded = new ArrayList<>(nodes.size());
+        for (DiscoverySnapshotStore.StoredNode node : nodes) {
+            final ServiceNode<RevolverServiceResolver.ShardInfo> serviceNode = new ServiceNode<>(node.getHost(), node.getPort(),
+                    new RevolverServiceResolver.ShardInfo(criteria.getEnvironment(), node.getRegion(), node.getZone(), node.getRack()));
+            serviceNode.setHealthcheckStatus(HealthcheckStatus.healthy);
+            seeded.add(serviceNode);
+        }
+        view = build(seeded);
+        confirmedAt = persistedAt;
+    }
+
+    /**
+     * Swaps in the finder of a re-registered service, keeping the nodes known so far
+     * @return the finder replaced
+     */
+    synchronized SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> replace(final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> replacement) {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> replaced = finder;
+        finderSince = System.currentTimeMillis();
+        finder = replacement;
+        return replaced;
+    }
+
+    /**
+     * Whether the finder has confirmed healthy nodes since the given time; seeded or kept nodes don't count
+     */
+    boolean warm(final long since) {
+        final View current = view;
+        return current != null && !current.healthy.isEmpty() && confirmedAt >= since;
+    }
+
+    /**
+     * Healthy nodes with their locality, as persisted to the on disk snapshot; null until there is a view
+     */
+    List<DiscoverySnapshotStore.StoredNode> nodes() {
+        final View current = view;
+        return current == null ? null : current.nodes;
+    }
+
+    /**
+     * All healthy endpoints
+     */
+    List<Endpoint> healthy() {
+        return view().healthy;
+    }
+
+    /**
+     * Healthy endpoints to route to: the local tier when it is healthy enough, otherwise all healthy endpoints
+     */
+    List<Endpoint> preferred() {
+        return view().preferred;
+    }
+
+    void selected(final Endpoint endpoint) {
+        if (endpoint == null) {
+            return;
+        }
+        if (view().local.contains(endpoint)) {
+            local.mark();
+        } else {
+            remote.mark();
+        }
+    }
+
+    /**
+     * Run by the refresher and starter threads only; serialized so that an older answer of the finder never replaces a newer one
+     * @return true if the healthy or preferred endpoints changed
+     */
+    synchronized boolean refresh() {
+        final List<ServiceNode<RevolverServiceResolver.ShardInfo>> nodes = finder.getAll(criteria);
+        final View updated = build(nodes == null ? ImmutableList.of() : nodes);
+        final View current = view;
+        final long now = System.currentTimeMillis();
+        if (updated.healthy.isEmpty() && current != null && !current.healthy.isEmpty()
+                && (!connected.getAsBoolean() || now - finderSince < STARTUP_GRACE_MILLIS)) {
+            //Keep serving the last known nodes; staleness shows how old they are
+            return false;
+        }
+        confirmedAt = now;
+        if (updated.equals(current)) {
+            return false;
+        }
+        view = updated;
+        return true;
+    }
+
+    private View build(final List<ServiceNode<RevolverServiceResolver.ShardInfo>> all) {
+        final List<Endpoint> healthy = endpoints(all, node -> true);
+        final List<Tier> tiers = locality.tiers();
+        List<Endpoint> preferred = healthy;
+        for (Tier tier : tiers) {
+            final List<Endpoint> tierHealthy = endpoints(all, tier.getMembers());
+            final long tierTotal = all.stream().filter(node -> tier.getMembers().test(node.getNodeData())).count();
+            //Healthy enough within itself, and holding enough of all healthy nodes to take this gateway's traffic: at
+            //least the threshold of an even share across its peers (the other racks, zones or regions)
+            if (!tierHealthy.isEmpty() && tierHealthy.size() * 100L >= localityThreshold * tierTotal
+                    && tierHealthy.size() * 100L * peers(all, tier) >= (long) localityThreshold * healthy.size()) {
+                preferred = tierHealthy;
+                break;
+            }
+        }
+        final Set<Endpoint> localEndpoints = ImmutableSet.copyOf(tiers.isEmpty() ? healthy : endpoints(all, locality.local()));
+        final List<DiscoverySnapshotStore.StoredNode> stored = new ArrayList<>(healthy.size());
+        for (ServiceNode<RevolverServiceResolver.ShardInfo> node : all) {
+            if (node.getHealthcheckStatus() == HealthcheckStatus.healthy) {
+                final RevolverServiceResolver.ShardInfo shard = node.getNodeData();
+                stored.add(new DiscoverySnapshotStore.StoredNode(node.getHost(), node.getPort(), shard == null ? null : shard.getRegion(),
+                        shard == null ? null : shard.getZone(), shard == null ? null : shard.getRack()));
+            }
+        }
+        return new View(healthy, preferred, localEndpoints, ImmutableList.sortedCopyOf(NODE_ORDER, stored));
+    }
+
+    //Until the first refresh (the finder may still be starting) there is nothing to route to; requests never build the view
+    private View view() {
+        final View current = view;
+        return current == null ? View.EMPTY : current;
+    }
+
+    private static long peers(final List<ServiceNode<RevolverServiceResolver.ShardInfo>> nodes, final Tier tier) {
+        return nodes.stream()
+                .filter(node -> node.getHealthcheckStatus() == HealthcheckStatus.healthy)
+                .map(node -> node.getNodeData() == null ? null : tier.getKey().apply(node.getNodeData()))
+                .distinct()
+                .count();
+    }
+
+    //Sorted so that the finder handing out the same nodes in another order doesn't count as a change
+    private static List<Endpoint> endpoints(final List<ServiceNode<RevolverServiceResolver.ShardInfo>> nodes,
+                                            final Predicate<RevolverServiceResolver.ShardInfo> filter) {
+        final List<Endpoint> endpoints = new ArrayList<>();
+        for (ServiceNode<RevolverServiceResolver.ShardInfo> node : nodes) {
+            if (node.getHealthcheckStatus() == HealthcheckStatus.healthy && filter.test(node.getNodeData())) {
+                endpoints.add(Endpoint.builder().host(node.getHost()).port(node.getPort()).build());
+            }
+        }
+        return ImmutableList.sortedCopyOf(ORDER, endpoints);
+    }
+
+    @Value
+    private static class View {
+        private static final View EMPTY = new View(ImmutableList.of(), ImmutableList.of(), ImmutableSet.of(), ImmutableList.of());
+
+        private List<Endpoint> healthy;
+        private List<Endpoint> preferred;
+        private Set<Endpoint> local;
+        private List<DiscoverySnapshotStore.StoredNode> nodes;
+    }
+
+    /**
+     * Where the gateway runs; unset parts don't take part in locality preference
+     */
+    @Value
+    static class Locality {
+
+        static final Locality NONE = new Locality(null, null, null);
+
+        private String region;
+        private String zone;
+        private String rack;
+
+        //Most specific first
+        List<Tier> tiers() {
+            final ImmutableList.Builder<Tier> tiers = ImmutableList.builder();
+            if (!Strings.isNullOrEmpty(rack)) {
+                tiers.add(new Tier(shard -> shard != null && Objects.equals(rack, shard.getRack())
+                        && (Strings.isNullOrEmpty(zone) || Objects.equals(zone, shard.getZone())),
+                        RevolverServiceResolver.ShardInfo::getRack));
+            }
+            if (!Strings.isNullOrEmpty(zone)) {
+                tiers.add(new Tier(shard -> shard != null && Objects.equals(zone, shard.getZone()), RevolverServiceResolver.ShardInfo::getZone));
+            }
+            if (!Strings.isNullOrEmpty(region)) {
+                tiers.add(new Tier(shard -> shard != null && Objects.equals(region, shard.getRegion()), RevolverServiceResolver.ShardInfo::getRegion));
+            }
+            return tiers.build();
+        }
+
+        //Traffic counts as local when it stays in the gateway's zone (or region, when no zone is known)
+        Predicate<RevolverServiceResolver.ShardInfo> local() {
+            if (!Strings.isNullOrEmpty(zone)) {
+                return shard -> shard != null && Objects.equals(zone, shard.getZone());
+            }
+            if (!Strings.isNullOrEmpty(region)) {
+                return shard -> shard != null && Objects.equals(region, shard.getRegion());
+            }
+            return shard -> shard != null && Objects.equals(rack, shard.getRack());
+        }
+    }
+
+    /**
+     * Nodes of one locality tier of the gateway, and what tells the tier apart from its peers
+     */
+    @Value
+    static class Tier {
+        private Predicate<RevolverServiceResolver.ShardInfo> members;
+        private Function<RevolverServiceResolver.ShardInfo, String> key;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import io.dropwizard.revolver.discovery.config.OutlierDetectionConfig;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Latency and load aware choice between the nodes of a discovered service: keeps a time decayed moving average of
+ * each node's latency along with its in flight calls and picks the better of two random nodes (power of two choices).
+ * Nodes that keep failing or are far slower than their peers are ejected from selection for a while.
+ * @author phaneesh
+ */
+@Slf4j
+public class NodeSelector {
+
+    //Time constant of the latency average; older samples lose 1/e of their weight every DECAY_MILLIS
+    private static final double DECAY_MILLIS = 10000.0;
+
+    //Failed calls count as at least this slow so that a failing node is steered away from
+    private static final long FAILURE_PENALTY_MILLIS = 1000;
+
+    private final Map<Endpoint, NodeStats> stats = new ConcurrentHashMap<>();
+
+    private final OutlierDetectionConfig outlierDetection;
+
+    public NodeSelector() {
+        this(new OutlierDetectionConfig());
+    }
+
+    public NodeSelector(final OutlierDetectionConfig outlierDetection) {
+        this.outlierDetection = outlierDetection == null ? new OutlierDetectionConfig() : outlierDetection;
+    }
+
+    public Endpoint select(final List<Endpoint> nodes) {
+        if (nodes == null || nodes.isEmpty()) {
+            return null;
+        }
+        prune(nodes);
+        final List<Endpoint> candidates = available(nodes);
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        final Endpoint a = candidates.get(first);
+        final Endpoint b = candidates.get(second);
+        return score(a) <= score(b) ? a : b;
+    }
+
+    public void started(final Endpoint endpoint) {
+        stats(endpoint).inflight.incrementAndGet();
+    }
+
+    /**
+     * The call was dropped for reasons that say nothing about the node (it lost a hedge race); only its in flight slot is released
+     */
+    public void abandoned(final Endpoint endpoint) {
+        stats(endpoint).inflight.decrementAndGet();
+    }
+
+    public void completed(final Endpoint endpoint, final long millis, final boolean success) {
+        final NodeStats node = stats(endpoint);
+        node.inflight.decrementAndGet();
+        node.update(success ? millis : Math.max(millis, FAILURE_PENALTY_MILLIS));
+        if (!outlierDetection.isEnabled()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (success) {
+            node.succeeded(now, outlierDetection);
+            if (isSlowOutlier(endpoint, node)) {
+                eject(endpoint, node, now, "latency " + (long) node.latency + "ms");
+            }
+        } else if (node.failed() >= outlierDetection.getConsecutiveFailures()) {
+            eject(endpoint, node, now, node.consecutiveFailures + " consecutive failures");
+        }
+    }
+
+    public NodeState state(final Endpoint endpoint) {
+        final NodeStats node = stats.get(endpoint);
+        if (node == null) {
+            return NodeState.builder().build();
+        }
+        final long now = System.currentTimeMillis();
+        return NodeState.builder()
+                .latency(node.latency)
+                .inflight(Math.max(node.inflight.get(), 0))
+                .consecutiveFailures(node.consecutiveFailures)
+                .ejected(node.isEjected(now))
+                .ejectedUntil(node.isEjected(now) ? node.ejectedUntil : 0)
+                .ejections(node.ejections)
+                .build();
+    }
+
+    double score(final Endpoint endpoint) {
+        final NodeStats node = stats.get(endpoint);
+        if (node == null) {
+            return 1;
+        }
+        //Unmeasured nodes look fast and get probed first; queued calls make a node proportionally slower
+        return Math.max(node.latency, 1) * (Math.max(node.inflight.get(), 0) + 1);
+    }
+
+    //Never leaves a service without nodes: if everything is ejected, everything is fair game again
+    private List<Endpoint> available(final List<Endpoint> nodes) {
+        if (!outlierDetection.isEnabled()) {
+            return nodes;
+        }
+        final long now = System.currentTimeMillis();
+        //Common case, nothing ejected: hand back the (immutable) snapshot as is
+        if (nodes.stream().noneMatch(node -> isEjected(node, now))) {
+            return nodes;
+        }
+        final List<Endpoint> available = nodes.stream()
+                .filter(node -> !isEjected(node, now))
+                .collect(Collectors.toList());
+        return available.isEmpty() ? nodes : available;
+    }
+
+    private boolean isEjected(final Endpoint endpoint, final long now) {
+        final NodeStats node = stats.get(endpoint);
+        return node != null && node.isEjected(now);
+    }
+
+    private boolean isSlowOutlier(final Endpoint endpoint, final NodeStats node) {
+        if (outlierDetection.getLatencyFactor() <= 0 || node.latency < outlierDetection.getMinLatency()) {
+            return false;
+        }
+        double total = 0;
+        int peers = 0;
+        for (Map.Entry<Endpoint, NodeStats> peer : stats.entrySet()) {
+            if (!peer.getKey().equals(endpoint) && peer.getValue().updatedAt > 0) {
+                total += peer.getValue().latency;
+                peers++;
+            }
+        }
+        return peers > 0 && node.latency > outlierDetection.getLatencyFactor() * (total / peers);
+    }
+
+    private void eject(final Endpoint endpoint, final NodeStats node, final long now, final String reason) {
+        if (node.isEjected(now)) {
+            return;
+        }
+        final long ejected = stats.values().stream().filter(n -> n.isEjected(now)).count();
+        if ((ejected + 1) * 100 > (long) outlierDetection.getMaxEjectionPercent() * stats.size()) {
+            return;
+        }
+        final long duration = node.eject(now, outlierDetection);
+        log.warn("Ejected {}:{} for {}ms: {}", endpoint.getHost(), endpoint.getPort(), duration, reason);
+    }
+
+    private NodeStats stats(final Endpoint endpoint) {
+        return stats.computeIfAbsent(endpoint, e -> new NodeStats());
+    }
+
+    //Nodes come and go with discovery; drop the stats of the ones that are gone
+    private void prune(final List<Endpoint> nodes) {
+        if (stats.size() > nodes.size() * 2) {
+            stats.keySet().retainAll(nodes);
+        }
+    }
+
+    /**
+     * Selection and ejection state of a node as seen by the gateway
+     */
+    @Value
+    @Builder
+    public static class NodeState {
+        private double latency;
+        private int inflight;
+        private int consecutiveFailures;
+        private boolean ejected;
+        private long ejectedUntil;
+        private int ejections;
+    }
+
+    private static class NodeStats {
+        private final AtomicInteger inflight = new AtomicInteger();
+        private volatile double latency;
+        private volatile long updatedAt;
+        private volatile int consecutiveFailures;
+        private volatile long ejectedUntil;
+        private volatile int ejections;
+
+        private synchronized void update(final long millis) {
+            final long now = System.currentTimeMillis();
+            //Peak sensitive: a slower sample is taken as is so a degrading node is noticed at once, recoveries decay in
+            if (updatedAt == 0 || millis > latency) {
+                latency = millis;
+            } else {
+                final double weight = Math.exp(-(now - updatedAt) / DECAY_MILLIS);
+                latency = latency * weight + millis * (1 - weight);
+            }
+            updatedAt = now;
+        }
+
+        private boolean isEjected(final long now) {
+            return now < ejectedUntil;
+        }
+
+        private synchronized int failed() {
+            return ++consecutiveFailures;
+        }
+
+        private synchronized void succeeded(final long now, final OutlierDetectionConfig config) {
+            consecutiveFailures = 0;
+            //Behaved for as long as its last ejection lasted; later trouble starts from the base ejection time again
+            if (ejections > 0 && now > ejectedUntil + ejectionTime(config, ejections)) {
+                ejections = 0;
+            }
+        }
+
+        private synchronized long eject(final long now, final OutlierDetectionConfig config) {
+            ejections++;
+            consecutiveFailures = 0;
+            //Comes back unmeasured, to be judged on fresh samples rather than the ones that got it ejected
+            latency = 0;
+            updatedAt = 0;
+            final long duration = ejectionTime(config, ejections);
+            ejectedUntil = now + duration;
+            return duration;
+        }
+
+        private static long ejectionTime(final OutlierDetectionConfig config, final int ejections) {
+            final long backoff = (long) config.getBaseEjectionTime() << Math.min(ejections - 1, 20);
+            return Math.min(backoff, config.getMaxEjectionTime());
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package io.dropwizard.revolver.discovery;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -25,7 +26,9 @@ import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
 import com.flipkart.ranger.healthcheck.HealthcheckStatus;
 import com.flipkart.ranger.model.ServiceNode;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.dropwizard.revolver.discovery.model.Endpoint;
 import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
 import io.dropwizard.revolver.discovery.model.SimpleEndpointSpec;
@@ -36,9 +39,21 @@ import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.RetryNTimes;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author phaneesh
@@ -50,14 +65,32 @@ public class RevolverServiceResolver {
     private final boolean discoverEnabled;
     private final CuratorFramework curatorFramework;
     private final ServiceResolverConfig resolverConfig;
+    private final MetricRegistry metrics;
     @Getter
     private Map<String, ShardedServiceDiscoveryInfo> serviceFinders = Maps.newConcurrentMap();
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    //Kept across re-registrations so that reloads don't forget what is known about the nodes
+    private final Map<String, NodeSelector> selectors = Maps.newConcurrentMap();
+    private final Map<String, EndpointSnapshot> snapshots = Maps.newConcurrentMap();
+    //Finders are started with bounded parallelism; threads go away once startup is done
+    private final ThreadPoolExecutor executorService;
+    //Threads are only started once the first discovered service is registered
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("revolver-discovery-refresh-%d")
+            .setDaemon(true)
+            .build());
+    private ScheduledFuture<?> refresh;
+    private final DiscoverySnapshotStore store;
+    //Nodes persisted by an earlier run, used until the finder of a service has loaded
+    private final Map<String, DiscoverySnapshotStore.StoredService> persisted;
+    //Services whose finders haven't confirmed nodes yet, with the time the finder finished starting (0 while starting)
+    private final Map<String, Long> cold = Maps.newConcurrentMap();
+    private long readyDeadline = Long.MAX_VALUE;
 
     @Builder
-    public RevolverServiceResolver(final ServiceResolverConfig resolverConfig, final ObjectMapper objectMapper) {
+    public RevolverServiceResolver(final ServiceResolverConfig resolverConfig, final ObjectMapper objectMapper, final MetricRegistry metrics) {
         this.resolverConfig = resolverConfig;
         this.objectMapper = objectMapper;
+        this.metrics = metrics == null ? new MetricRegistry() : metrics;
         if (resolverConfig != null) {
             if (!Strings.isNullOrEmpty(resolverConfig.getZkConnectionString())) {
                 this.curatorFramework = CuratorFrameworkFactory.builder().connectString(resolverConfig.getZkConnectionString())
@@ -72,18 +105,109 @@ public class RevolverServiceResolver {
             discoverEnabled = false;
             curatorFramework = null;
         }
+        this.store = store(resolverConfig);
+        this.persisted = store == null ? Collections.emptyMap() : store.load();
+        this.executorService = starter(resolverConfig);
     }
 
     @Builder(builderMethodName = "usingCurator")
-    public RevolverServiceResolver(final ServiceResolverConfig resolverConfig, final ObjectMapper objectMapper, final CuratorFramework curatorFramework) {
+    public RevolverServiceResolver(final ServiceResolverConfig resolverConfig, final ObjectMapper objectMapper, final CuratorFramework curatorFramework,
+                                   final MetricRegistry metrics) {
         this.resolverConfig = resolverConfig;
         this.objectMapper = objectMapper;
+        this.metrics = metrics == null ? new MetricRegistry() : metrics;
         this.curatorFramework = curatorFramework;
         this.discoverEnabled = true;
+        this.store = store(resolverConfig);
+        this.persisted = store == null ? Collections.emptyMap() : store.load();
+        this.executorService = starter(resolverConfig);
+    }
+
+    private static ThreadPoolExecutor starter(final ServiceResolverConfig resolverConfig) {
+        final int parallelism = resolverConfig == null ? 8 : resolverConfig.getStartupParallelism();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("revolver-discovery-start-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static DiscoverySnapshotStore store(final ServiceResolverConfig resolverConfig) {
+        if (resolverConfig == null || Strings.isNullOrEmpty(resolverConfig.getSnapshotPath())) {
+            return null;
+        }
+        return new DiscoverySnapshotStore(Paths.get(resolverConfig.getSnapshotPath()));
     }
 
     public Endpoint resolve(final EndpointSpec endpointSpecification) {
-        return new SpecResolver(this.discoverEnabled, this.serviceFinders).resolve(endpointSpecification);
+        return new SpecResolver(this.discoverEnabled, this.snapshots, this.selectors, null).resolve(endpointSpecification);
+    }
+
+    /**
+     * Resolves a healthy endpoint other than the given one; null when the service has no other healthy node
+     */
+    public Endpoint resolveOther(final EndpointSpec endpointSpecification, final Endpoint exclude) {
+        return new SpecResolver(this.discoverEnabled, this.snapshots, this.selectors, exclude).resolve(endpointSpecification);
+    }
+
+    /**
+     * Node selector of a discovered service, to be told about the outcome of calls to its nodes; null for simple endpoints
+     */
+    public NodeSelector selector(final EndpointSpec endpointSpecification) {
+        if (endpointSpecification instanceof RangerEndpointSpec) {
+            return selector(((RangerEndpointSpec) endpointSpecification).getService());
+        }
+        return null;
+    }
+
+    public NodeSelector selector(final String service) {
+        return selectors.get(service);
+    }
+
+    /**
+     * Discovered services that haven't loaded their nodes yet
+     */
+    public Set<String> coldServices() {
+        return ImmutableSet.copyOf(cold.keySet());
+    }
+
+    /**
+     * Ready once every discovered service has loaded its nodes, or the startup timeout since the first registration has passed
+     */
+    public synchronized boolean isReady() {
+        return cold.isEmpty() || System.currentTimeMillis() >= readyDeadline;
+    }
+
+    /**
+     * Blocks until {@link #isReady()}
+     * @return false if the startup timeout passed with services still cold
+     */
+    public synchronized boolean awaitReady() throws InterruptedException {
+        while (!cold.isEmpty()) {
+            final long remaining = readyDeadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private synchronized void warming(final String service) {
+        if (readyDeadline == Long.MAX_VALUE) {
+            readyDeadline = System.currentTimeMillis() + (resolverConfig == null ? 30000 : resolverConfig.getStartupTimeout());
+        }
+        cold.put(service, 0L);
+    }
+
+    private synchronized void checkWarm(final String service) {
+        final Long startedAt = cold.get(service);
+        final EndpointSnapshot snapshot = snapshots.get(service);
+        if (startedAt == null || startedAt == 0 || snapshot == null || !snapshot.warm(startedAt)) {
+            return;
+        }
+        cold.remove(service);
+        log.info("Discovery warm for {} ({} services still cold)", service, cold.size());
+        notifyAll();
     }
 
 
@@ -118,17 +242,7 @@ public class RevolverServiceResolver {
                                         }
                                     }
                             ).build();
-                    serviceFinders.put(rangerEndpointSpecification.getService(), ShardedServiceDiscoveryInfo.builder().environment(rangerEndpointSpecification.getEnvironment()).shardFinder(serviceFinder).build());
-                    executorService.submit(() -> {
-                                try {
-                                    log.info("Service finder starting for: " + rangerEndpointSpecification.getService());
-                                    serviceFinder.start();
-                                } catch (Exception e) {
-                                    log.error("Error registering service finder started for: " + rangerEndpointSpecification.getService(), e);
-                                }
-                                return null;
-                            }
-                    );
+                    register(rangerEndpointSpecification, serviceFinder);
                     log.info("Initialized ZK service: " + rangerEndpointSpecification.getService());
                 } catch (Exception e) {
                     log.error("Error registering hander for service: " + rangerEndpointSpecification.getService(), e);
@@ -137,6 +251,122 @@ public class RevolverServiceResolver {
         });
     }
 
+    /**
+     * Starts tracking the nodes of a discovered service through the given finder. A re-registered service (on a config
+     * reload) keeps the nodes it knows as long as its environment and locality are unchanged; the finder it replaces is stopped.
+     */
+    void register(final RangerEndpointSpec rangerEndpointSpecification, final SimpleShardedServiceFinder<ShardInfo> serviceFinder) {
+        final String service = rangerEndpointSpecification.getService();
+        selectors.computeIfAbsent(service, name -> new NodeSelector(resolverConfig == null ? null : resolverConfig.getOutlierDetection()));
+        serviceFinders.put(service, ShardedServiceDiscoveryInfo.builder().environment(rangerEndpointSpecification.getEnvironment()).shardFinder(serviceFinder).build());
+        final EndpointSnapshot.Locality locality = locality(rangerEndpointSpecification);
+        final EndpointSnapshot existing = snapshots.get(service);
+        final EndpointSnapshot snapshot;
+        if (existing != null && Objects.equals(existing.getEnvironment(), rangerEndpointSpecification.getEnvironment())
+                && existing.getLocality().equals(locality)) {
+            snapshot = existing;
+            stop(service, snapshot.replace(serviceFinder));
+        } else {
+            snapshot = new EndpointSnapshot(serviceFinder, service, rangerEndpointSpecification.getEnvironment(), locality,
+                    resolverConfig == null ? 50 : resolverConfig.getLocalityThreshold(), metrics, () -> connected());
+            final DiscoverySnapshotStore.StoredService stored = existing == null ? persisted.get(service) : null;
+            if (stored != null && Strings.nullToEmpty(rangerEndpointSpecification.getEnvironment()).equals(stored.getEnvironment())
+                    && !stored.getNodes().isEmpty()) {
+                snapshot.seed(stored.getNodes(), stored.getConfirmedAt());
+                log.info("Seeded {} nodes of {} from discovery snapshot", stored.getNodes().size(), service);
+            }
+            snapshots.put(service, snapshot);
+            if (existing != null) {
+                stop(service, existing.getFinder());
+            }
+            warming(service);
+        }
+        scheduleRefresh();
+        executorService.submit(() -> {
+                    try {
+                        if (snapshot.getFinder() != serviceFinder) {
+                            //Replaced by a later registration before it got to start
+                            return null;
+                        }
+                        log.info("Service finder starting for: " + service);
+                        serviceFinder.start();
+                        cold.replace(service, 0L, System.currentTimeMillis());
+                        snapshot.refresh();
+                        checkWarm(service);
+                    } catch (Exception e) {
+                        log.error("Error registering service finder started for: " + service, e);
+                    }
+                    return null;
+                }
+        );
+    }
+
+    private static void stop(final String service, final SimpleShardedServiceFinder<ShardInfo> finder) {
+        try {
+            finder.stop();
+        } catch (Exception e) {
+            log.error("Error stopping replaced service finder for: " + service, e);
+        }
+    }
+
+    private EndpointSnapshot.Locality locality(final RangerEndpointSpec spec) {
+        if (!Strings.isNullOrEmpty(spec.getRegion()) || !Strings.isNullOrEmpty(spec.getZone()) || !Strings.isNullOrEmpty(spec.getRack())) {
+            return new EndpointSnapshot.Locality(spec.getRegion(), spec.getZone(), spec.getRack());
+        }
+        if (resolverConfig == null) {
+            return EndpointSnapshot.Locality.NONE;
+        }
+        return new EndpointSnapshot.Locality(resolverConfig.getRegion(), resolverConfig.getZone(), resolverConfig.getRack());
+    }
+
+    private synchronized void scheduleRefresh() {
+        if (refresh != null) {
+            return;
+        }
+        final long interval = resolverConfig == null ? 1000 : resolverConfig.getRefreshInterval();
+        refresh = refresher.scheduleWithFixedDelay(this::refreshSnapshots, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean connected() {
+        return curatorFramework != null && curatorFramework.getZookeeperClient().isConnected();
+    }
+
+    private void refreshSnapshots() {
+        boolean changed = false;
+        for (Map.Entry<String, EndpointSnapshot> entry : snapshots.entrySet()) {
+            try {
+                if (entry.getValue().refresh()) {
+                    changed = true;
+                    log.info("Healthy nodes of {} changed: {}", entry.getKey(), entry.getValue().healthy());
+                }
+                if (cold.containsKey(entry.getKey())) {
+                    checkWarm(entry.getKey());
+                }
+            } catch (Exception e) {
+                log.error("Error refreshing nodes of service: " + entry.getKey(), e);
+            }
+        }
+        if (changed && store != null) {
+            persist();
+        }
+    }
+
+    private void persist() {
+        final Map<String, DiscoverySnapshotStore.StoredService> services = new HashMap<>();
+        snapshots.forEach((service, snapshot) -> {
+            final List<DiscoverySnapshotStore.StoredNode> nodes = snapshot.nodes();
+            if (nodes != null && !nodes.isEmpty()) {
+                services.put(service, new DiscoverySnapshotStore.StoredService(Strings.nullToEmpty(snapshot.getEnvironment()),
+                        snapshot.getConfirmedAt(), nodes));
+            }
+        });
+        try {
+            store.save(services);
+        } catch (IOException e) {
+            log.error("Error persisting discovery snapshot", e);
+        }
+    }
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -157,21 +387,43 @@ public class RevolverServiceResolver {
     @Builder
     public static final class ShardInfo {
         private String environment;
+
+        //Locality is descriptive: nodes are still sharded (matched by the finder) on environment alone
+        @EqualsAndHashCode.Exclude
+        private String region;
+
+        @EqualsAndHashCode.Exclude
+        private String zone;
+
+        @EqualsAndHashCode.Exclude
+        private String rack;
+
+        public ShardInfo(final String environment) {
+            this.environment = environment;
+        }
     }
 
     private static class SpecResolver implements SpecVisitor {
         private Endpoint endpoint;
         private final boolean discoverEnabled;
-        private final Map<String, ShardedServiceDiscoveryInfo> serviceFinders;
+        private final Map<String, EndpointSnapshot> snapshots;
+        private final Map<String, NodeSelector> selectors;
+        private final Endpoint exclude;
 
-        private SpecResolver(final boolean discoverEnabled, final Map<String, ShardedServiceDiscoveryInfo> serviceFinders) {
+        private SpecResolver(final boolean discoverEnabled, final Map<String, EndpointSnapshot> snapshots,
+                             final Map<String, NodeSelector> selectors, final Endpoint exclude) {
             this.discoverEnabled = discoverEnabled;
-            this.serviceFinders = serviceFinders;
+            this.snapshots = snapshots;
+            this.selectors = selectors;
+            this.exclude = exclude;
         }
 
         @Override
         public void visit(final SimpleEndpointSpec simpleEndpointSpecification) {
-            this.endpoint = Endpoint.builder().host(simpleEndpointSpecification.getHost()).port(simpleEndpointSpecification.getPort()).build();
+            final Endpoint simple = Endpoint.builder().host(simpleEndpointSpecification.getHost()).port(simpleEndpointSpecification.getPort()).build();
+            if (!simple.equals(exclude)) {
+                this.endpoint = simple;
+            }
         }
 
         @Override
@@ -179,12 +431,27 @@ public class RevolverServiceResolver {
             if (!this.discoverEnabled) {
                 throw new IllegalAccessError("Zookeeper is not initialized in config. Discovery based lookups will not be possible.");
             }
-            final SimpleShardedServiceFinder<ShardInfo> finder = this.serviceFinders.get(rangerEndpointSpecification.getService()).getShardFinder();
-            final ServiceNode<ShardInfo> node = finder.get(ShardInfo.builder().environment(rangerEndpointSpecification.getEnvironment()).build());
-            //Get only the nodes that are healthy
-            if (node != null && node.getHealthcheckStatus() == HealthcheckStatus.healthy) {
-                this.endpoint = Endpoint.builder().host(node.getHost()).port(node.getPort()).build();
+            final EndpointSnapshot snapshot = this.snapshots.get(rangerEndpointSpecification.getService());
+            if (snapshot == null) {
+                return;
+            }
+            final List<Endpoint> candidates = exclude == null ? snapshot.preferred() : others(snapshot);
+            final NodeSelector selector = this.selectors.get(rangerEndpointSpecification.getService());
+            if (selector != null) {
+                this.endpoint = selector.select(candidates);
+            } else if (!candidates.isEmpty()) {
+                this.endpoint = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+            }
+            snapshot.selected(this.endpoint);
+        }
+
+        //Local nodes other than the excluded one first, then any other healthy node
+        private List<Endpoint> others(final EndpointSnapshot snapshot) {
+            final List<Endpoint> preferred = snapshot.preferred().stream().filter(node -> !node.equals(exclude)).collect(Collectors.toList());
+            if (!preferred.isEmpty()) {
+                return preferred;
             }
+            return snapshot.healthy().stream().filter(node -> !node.equals(exclude)).collect(Collectors.toList());
         }
 
         Endpoint resolve(final EndpointSpec specification) {
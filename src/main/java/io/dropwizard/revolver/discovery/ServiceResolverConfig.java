@@ -17,11 +17,15 @@
 
 package io.dropwizard.revolver.discovery;
 
+import io.dropwizard.revolver.discovery.config.OutlierDetectionConfig;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
 /**
  * @author phaneesh
  */
@@ -38,5 +42,53 @@ public class ServiceResolverConfig {
 
     private String namespace;
 
+    /**
+     * Milliseconds between rebuilds of the healthy endpoint snapshots of discovered services
+     */
+    @Min(100)
+    @Builder.Default
+    private int refreshInterval = 1000;
+
+    /**
+     * Number of service finders started in parallel
+     */
+    @Min(1)
+    @Builder.Default
+    private int startupParallelism = 8;
+
+    /**
+     * Milliseconds startup waits for discovered services to load their nodes before serving regardless
+     */
+    @Min(0)
+    @Builder.Default
+    private long startupTimeout = 30000;
+
+    /**
+     * Locality of the gateway; discovered nodes in the same rack, zone or region are preferred
+     */
+    private String region;
+
+    private String zone;
+
+    private String rack;
+
+    /**
+     * Minimum percentage of healthy nodes in a locality tier for traffic to stay in it; the tier must also hold this
+     * percentage of an even share of all healthy nodes across its peer racks, zones or regions
+     */
+    @Min(0)
+    @Max(100)
+    @Builder.Default
+    private int localityThreshold = 50;
+
+    @Builder.Default
+    private OutlierDetectionConfig outlierDetection = new OutlierDetectionConfig();
+
+    /**
+     * File the last known healthy nodes of discovered services are persisted to, so that a restart can route before
+     * (or without) ZooKeeper; unset disables persistence
+     */
+    private String snapshotPath;
+
 
 }
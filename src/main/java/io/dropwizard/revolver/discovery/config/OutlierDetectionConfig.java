@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * Ejection of discovered nodes that keep failing or are much slower than their peers. Ejections last
+ * baseEjectionTime (milliseconds), doubling for every repeat ejection up to maxEjectionTime.
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OutlierDetectionConfig {
+
+    @Builder.Default
+    private boolean enabled = true;
+
+    @Min(1)
+    @Builder.Default
+    private int consecutiveFailures = 5;
+
+    /**
+     * A node whose latency is this many times its peers' average is ejected; 0 turns latency based ejection off
+     */
+    @DecimalMin("0.0")
+    @Builder.Default
+    private double latencyFactor = 3.0;
+
+    /**
+     * Latencies (milliseconds) below this never count as outliers, however they compare with peers
+     */
+    @Min(0)
+    @Builder.Default
+    private int minLatency = 100;
+
+    @Min(0)
+    @Builder.Default
+    private int baseEjectionTime = 30000;
+
+    @Min(0)
+    @Builder.Default
+    private int maxEjectionTime = 300000;
+
+    @Min(0)
+    @Max(100)
+    @Builder.Default
+    private int maxEjectionPercent = 50;
+}
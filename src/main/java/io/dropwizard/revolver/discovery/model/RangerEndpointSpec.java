@@ -35,6 +35,21 @@ public class RangerEndpointSpec extends EndpointSpec {
     @Setter
     private String environment;
 
+    /**
+     * Locality to prefer nodes of; overrides the gateway's own locality from the service resolver config
+     */
+    @Getter
+    @Setter
+    private String region;
+
+    @Getter
+    @Setter
+    private String zone;
+
+    @Getter
+    @Setter
+    private String rack;
+
     public RangerEndpointSpec() {
         super(EndpointSpecType.ranger_sharded);
     }
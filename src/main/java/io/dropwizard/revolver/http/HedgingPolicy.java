@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.Snapshot;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpHedgeConfig;
+import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * When and how often an api's calls may be hedged: the hedge delay tracks a percentile of the last minute's latency
+ * and hedges are capped at a percentage of calls
+ * @author phaneesh
+ */
+@Slf4j
+class HedgingPolicy {
+
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("revolver-hedge-%d")
+            .setDaemon(true)
+            .build());
+
+    private static final Set<RevolverHttpApiConfig.RequestMethod> IDEMPOTENT = EnumSet.of(RevolverHttpApiConfig.RequestMethod.GET,
+            RevolverHttpApiConfig.RequestMethod.HEAD, RevolverHttpApiConfig.RequestMethod.OPTIONS,
+            RevolverHttpApiConfig.RequestMethod.PUT, RevolverHttpApiConfig.RequestMethod.DELETE);
+
+    //Too few samples make for a meaningless percentile
+    private static final int MIN_SAMPLES = 100;
+
+    private static final long DELAY_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    //Budget counters are halved past this so that the cap follows recent traffic
+    private static final long BUDGET_WINDOW = 10000;
+
+    private final String api;
+
+    private final RevolverHttpHedgeConfig config;
+
+    private final Histogram latency;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final Meter hedged;
+
+    private final Meter won;
+
+    private final Meter throttled;
+
+    private volatile long delay = -1;
+
+    private volatile long delayComputedAt;
+
+    HedgingPolicy(final String service, final RevolverHttpApiConfig apiConfig, final MetricRegistry metrics) {
+        this.api = apiConfig.getApi();
+        this.config = apiConfig.getHedge();
+        final String prefix = MetricRegistry.name("revolver", "hedge", service, apiConfig.getApi());
+        this.latency = metrics.histogram(MetricRegistry.name(prefix, "latency"),
+                () -> new Histogram(new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES)));
+        this.hedged = metrics.meter(MetricRegistry.name(prefix, "hedged"));
+        this.won = metrics.meter(MetricRegistry.name(prefix, "won"));
+        this.throttled = metrics.meter(MetricRegistry.name(prefix, "throttled"));
+    }
+
+    boolean applies(final RevolverHttpRequest request) {
+        return IDEMPOTENT.contains(request.getMethod()) && request.getBodyStream() == null;
+    }
+
+    /**
+     * Milliseconds to wait on the primary call before hedging; -1 while there is not enough latency data
+     */
+    long delay() {
+        final long now = System.currentTimeMillis();
+        if (now - delayComputedAt > DELAY_REFRESH_INTERVAL) {
+            delayComputedAt = now;
+            final Snapshot snapshot = latency.getSnapshot();
+            delay = snapshot.size() < MIN_SAMPLES ? -1
+                    : Math.max(config.getMinDelay(), (long) snapshot.getValue(config.getPercentile() / 100.0));
+        }
+        return delay;
+    }
+
+    void called() {
+        if (calls.incrementAndGet() > BUDGET_WINDOW) {
+            calls.set(calls.get() / 2);
+            hedges.set(hedges.get() / 2);
+        }
+    }
+
+    boolean tryHedge() {
+        if ((hedges.get() + 1) * 100 > config.getBudget() * calls.get()) {
+            throttled.mark();
+            return false;
+        }
+        hedges.incrementAndGet();
+        hedged.mark();
+        return true;
+    }
+
+    void record(final long millis) {
+        latency.update(millis);
+    }
+
+    /**
+     * Races the primary call against a hedge that is started once the primary hasn't answered within the delay. The
+     * first successful response wins and the other call is cancelled; a server error only settles the race once the
+     * other call has failed too.
+     * @param hedge starts the call to another node; returns null when there is none
+     */
+    CompletableFuture<RevolverHttpResponse> execute(final CompletableFuture<RevolverHttpResponse> primary,
+                                                    final Callable<CompletableFuture<RevolverHttpResponse>> hedge) {
+        final CompletableFuture<RevolverHttpResponse> result = new CompletableFuture<>();
+        final List<CompletableFuture<RevolverHttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicReference<RevolverHttpResponse> failed = new AtomicReference<>();
+        called();
+        final long delay = delay();
+        attempts.add(race(result, pending, failed, primary, false));
+        final ScheduledFuture<?> timer = delay < 0 ? null : scheduler.schedule(() -> {
+            if (result.isDone() || !tryHedge()) {
+                return;
+            }
+            try {
+                final CompletableFuture<RevolverHttpResponse> call = hedge.call();
+                if (call == null) {
+                    return;
+                }
+                pending.incrementAndGet();
+                attempts.add(race(result, pending, failed, call, true));
+                if (result.isDone()) {
+                    call.cancel(true);
+                }
+            } catch (Exception e) {
+                log.warn("Could not hedge call to {}: {}", api, e.getMessage());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        //Settled (or cancelled by a timeout): stop the pending hedge and abort whichever call is still running
+        result.whenComplete((response, error) -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            attempts.forEach(attempt -> {
+                if (error == null) {
+                    attempt.completeExceptionally(new Lost());
+                } else {
+                    attempt.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Whether the call was cancelled because another one won the race, as opposed to a timeout
+     */
+    static boolean lost(final CompletableFuture<?> attempt) {
+        return attempt.handle((response, error) -> error instanceof Lost).getNow(false);
+    }
+
+    private CompletableFuture<RevolverHttpResponse> race(final CompletableFuture<RevolverHttpResponse> result, final AtomicInteger pending,
+                                                         final AtomicReference<RevolverHttpResponse> failed,
+                                                         final CompletableFuture<RevolverHttpResponse> attempt, final boolean hedge) {
+        final long start = System.currentTimeMillis();
+        attempt.whenComplete((response, error) -> {
+            //The delay follows the latency of primaries whether or not they won; one cancelled for a winning hedge
+            //took at least as long as it ran. Hedges started late, so their own latency would only drag it down.
+            if (!hedge && (error == null || error instanceof CancellationException)) {
+                record(System.currentTimeMillis() - start);
+            }
+            if (error == null && response.getStatusCode() < 500) {
+                if (result.complete(response) && hedge) {
+                    won.mark();
+                }
+                return;
+            }
+            //A fast server error from a bad node must not cancel a healthy call that is still running
+            if (error == null) {
+                failed.compareAndSet(null, response);
+            }
+            if (pending.decrementAndGet() == 0) {
+                final RevolverHttpResponse failedResponse = failed.get();
+                if (failedResponse != null) {
+                    result.complete(failedResponse);
+                } else {
+                    result.completeExceptionally(error);
+                }
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Cancellation of a call whose race was won by the other one
+     */
+    private static class Lost extends CancellationException {
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
+import lombok.Value;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single flight execution of identical GETs for an api: while a call for a (path, query, credentials, vary headers) key
+ * is in flight, further requests for the same key wait on it instead of going downstream. Credentials (authorization and
+ * cookies) are always part of the key, so that one caller is never handed the response fetched for another.
+ * @author phaneesh
+ */
+class RequestCoalescer {
+
+    private final Map<Key, CompletableFuture<RevolverHttpResponse>> inflight = new ConcurrentHashMap<>();
+
+    private final List<String> varyHeaders;
+
+    private final Meter coalesced;
+
+    private final Meter executed;
+
+    RequestCoalescer(final String service, final RevolverHttpApiConfig apiConfig, final MetricRegistry metrics) {
+        this.varyHeaders = apiConfig.getVaryHeaders() == null ? Collections.emptyList() : new ArrayList<>(apiConfig.getVaryHeaders());
+        this.coalesced = metrics.meter(MetricRegistry.name("revolver", service, apiConfig.getApi(), "coalesced"));
+        this.executed = metrics.meter(MetricRegistry.name("revolver", service, apiConfig.getApi(), "executed"));
+    }
+
+    CompletableFuture<RevolverHttpResponse> execute(final RevolverHttpRequest request, final String path,
+                                                    final Supplier<CompletableFuture<RevolverHttpResponse>> downstream) {
+        final Key key = new Key(path, request.getQueryParams(), varyValues(request));
+        final CompletableFuture<RevolverHttpResponse> leader = new CompletableFuture<>();
+        final CompletableFuture<RevolverHttpResponse> existing = inflight.putIfAbsent(key, leader);
+        if (existing != null) {
+            coalesced.mark();
+            return existing.thenApply(RequestCoalescer::copy);
+        }
+        executed.mark();
+        try {
+            downstream.get().whenComplete((response, error) -> {
+                inflight.remove(key, leader);
+                if (error != null) {
+                    leader.completeExceptionally(error);
+                } else {
+                    leader.complete(response);
+                }
+            });
+        } catch (RuntimeException e) {
+            inflight.remove(key, leader);
+            leader.completeExceptionally(e);
+        }
+        return leader.thenApply(RequestCoalescer::copy);
+    }
+
+    private List<String> varyValues(final RevolverHttpRequest request) {
+        if (request.getHeaders() == null) {
+            return Collections.emptyList();
+        }
+        final List<String> values = new ArrayList<>(varyHeaders.size() + 2);
+        values.add(header(request.getHeaders(), HttpHeaders.AUTHORIZATION));
+        values.add(header(request.getHeaders(), HttpHeaders.COOKIE));
+        for (String header : varyHeaders) {
+            values.add(header(request.getHeaders(), header));
+        }
+        return values;
+    }
+
+    private static String header(final MultivaluedMap<String, String> headers, final String header) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(header)) {
+                return String.join(",", entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    //Every waiter gets its own response; the body is shared and never written to by consumers
+    private static RevolverHttpResponse copy(final RevolverHttpResponse response) {
+        if (response == null) {
+            return null;
+        }
+        return RevolverHttpResponse.builder()
+                .statusCode(response.getStatusCode())
+                .headers(response.getHeaders() == null ? null : new MultivaluedHashMap<>(response.getHeaders()))
+                .body(response.getBody())
+                .build();
+    }
+
+    @Value
+    private static class Key {
+        String path;
+        MultivaluedMap<String, String> queryParams;
+        List<String> vary;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http;
+
+import com.google.common.base.Strings;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import io.dropwizard.revolver.http.cache.ResponseCache;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.routing.ApiPathTrie;
+import lombok.Getter;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything about building a downstream request for an api that does not change per request: the api client,
+ * the parsed path template, the url base (scheme/host/port) of the last resolved endpoint and parsed media types,
+ * along with the api's coalescer, response cache and hedging policy when it has them.
+ * @author phaneesh
+ */
+class RequestPlan {
+
+    static final MediaType ANY = MediaType.parse("*/*");
+
+    private static final int MAX_MEDIA_TYPES = 256;
+
+    private static final Map<String, MediaType> mediaTypes = new ConcurrentHashMap<>();
+
+    @Getter
+    private final RevolverHttpApiConfig apiConfig;
+
+    @Getter
+    private final OkHttpClient client;
+
+    private final String scheme;
+
+    private final ApiPathTrie.PathTemplate pathTemplate;
+
+    private final String defaultPath;
+
+    @Getter
+    private final RequestCoalescer coalescer;
+
+    @Getter
+    private final ResponseCache cache;
+
+    @Getter
+    private final HedgingPolicy hedging;
+
+    private volatile UrlBase urlBase;
+
+    RequestPlan(final RevolverHttpApiConfig apiConfig, final OkHttpClient client, final boolean secured) {
+        this(apiConfig, client, secured, null, null, null);
+    }
+
+    RequestPlan(final RevolverHttpApiConfig apiConfig, final OkHttpClient client, final boolean secured, final RequestCoalescer coalescer,
+                final ResponseCache cache, final HedgingPolicy hedging) {
+        this.apiConfig = apiConfig;
+        this.client = client;
+        this.coalescer = coalescer;
+        this.cache = cache;
+        this.hedging = hedging;
+        this.scheme = secured ? "https" : "http";
+        this.pathTemplate = ApiPathTrie.compile(apiConfig.getPath());
+        this.defaultPath = apiConfig.getPath().charAt(0) == '/' ? apiConfig.getPath() : "/" + apiConfig.getPath();
+    }
+
+    HttpUrl.Builder url(final Endpoint endpoint, final RevolverHttpRequest request) {
+        UrlBase base = urlBase;
+        if (base == null || !base.endpoint.equals(endpoint)) {
+            base = new UrlBase(endpoint, new HttpUrl.Builder().scheme(scheme).host(endpoint.getHost()).port(endpoint.getPort()).build());
+            urlBase = base;
+        }
+        return base.url.newBuilder().encodedPath(path(request));
+    }
+
+    String path(final RevolverHttpRequest request) {
+        final String path = request.getPath();
+        if (!Strings.isNullOrEmpty(path)) {
+            return path.charAt(0) == '/' ? path : "/" + path;
+        }
+        if (pathTemplate.isTemplated() && null != request.getPathParams()) {
+            return pathTemplate.expand(request.getPathParams());
+        }
+        return defaultPath;
+    }
+
+    static MediaType mediaType(final String contentType) {
+        if (Strings.isNullOrEmpty(contentType)) {
+            return ANY;
+        }
+        final MediaType cached = mediaTypes.get(contentType);
+        if (cached != null) {
+            return cached;
+        }
+        final MediaType parsed = MediaType.parse(contentType);
+        if (parsed == null) {
+            return ANY;
+        }
+        //Content types are a small set in practice; don't let odd clients grow this without bound
+        if (mediaTypes.size() < MAX_MEDIA_TYPES) {
+            mediaTypes.put(contentType, parsed);
+        }
+        return parsed;
+    }
+
+    private static class UrlBase {
+        private final Endpoint endpoint;
+        private final HttpUrl url;
+
+        private UrlBase(final Endpoint endpoint, final HttpUrl url) {
+            this.endpoint = endpoint;
+            this.url = url;
+        }
+    }
+}
@@ -17,20 +17,32 @@
 
 package io.dropwizard.revolver.http;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import io.dropwizard.revolver.core.config.HystrixCommandConfig;
+import io.dropwizard.revolver.core.config.hystrix.ThreadPoolConfig;
+import io.dropwizard.revolver.discovery.EndpointSpec;
+import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
+import io.dropwizard.revolver.discovery.model.SimpleEndpointSpec;
 import io.dropwizard.revolver.http.auth.BasicAuthConfig;
 import io.dropwizard.revolver.http.auth.TokenAuthConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
 import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpTimeoutConfig;
+import lombok.ToString;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import okhttp3.Call;
+import okhttp3.Connection;
 import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
 import okhttp3.Credentials;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.internal.tls.OkHostnameVerifier;
 import org.apache.commons.lang3.StringUtils;
 
@@ -40,9 +52,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.*;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @author phaneesh
@@ -50,20 +72,137 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class RevolverHttpClientFactory {
 
-    private static LoadingCache<RevolverHttpServiceConfig, OkHttpClient> clientCache = CacheBuilder.newBuilder()
-            .build(new CacheLoader<RevolverHttpServiceConfig, OkHttpClient>() {
-                @Override
-                public OkHttpClient load(RevolverHttpServiceConfig serviceConfiguration) throws Exception {
-                    return getOkHttpClient(serviceConfiguration);
-                }
-            });
+    private static final Map<ClientKey, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private static final Map<String, ClientKey> serviceClients = new ConcurrentHashMap<>();
+
+    private static final Map<String, AtomicInteger> inflight = new ConcurrentHashMap<>();
+
+    private static MetricRegistry metrics;
 
-    public static OkHttpClient buildClient(final RevolverHttpServiceConfig serviceConfiguration) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, UnrecoverableKeyException, ExecutionException {
+    public static void instrument(final MetricRegistry metricRegistry) {
+        metrics = metricRegistry;
+    }
+
+    /**
+     * Clients are shared by every service that resolves to the same connection settings (endpoint, tls, auth and pool);
+     * a client that is no longer used by any service is dropped and its idle connections are evicted
+     */
+    public static synchronized OkHttpClient buildClient(final RevolverHttpServiceConfig serviceConfiguration) throws CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, UnrecoverableKeyException, ExecutionException {
         Preconditions.checkNotNull(serviceConfiguration);
-        return clientCache.get(serviceConfiguration);
+        final ClientKey key = ClientKey.of(serviceConfiguration);
+        PooledClient pooledClient = clients.get(key);
+        if (pooledClient == null) {
+            pooledClient = new PooledClient();
+            pooledClient.client = getOkHttpClient(serviceConfiguration, pooledClient.listener());
+            clients.put(key, pooledClient);
+        }
+        final ClientKey previous = serviceClients.put(serviceConfiguration.getService(), key);
+        if (previous != null && !previous.equals(key)) {
+            dismiss(serviceConfiguration.getService(), previous);
+            release(previous);
+        }
+        if (serviceConfiguration.isNonBlocking()) {
+            pooledClient.admit(serviceConfiguration.getService(), maxCalls(serviceConfiguration));
+        }
+        registerGauges(serviceConfiguration.getService());
+        return pooledClient.client;
+    }
+
+    /**
+     * Drops clients of services that are not in the given set; called after a configuration reload
+     */
+    public static synchronized void retain(final Collection<String> services) {
+        final List<String> removed = serviceClients.keySet().stream()
+                .filter(service -> !services.contains(service))
+                .collect(Collectors.toList());
+        removed.forEach(RevolverHttpClientFactory::release);
+    }
+
+    static synchronized void release(final String service) {
+        final ClientKey key = serviceClients.remove(service);
+        dismiss(service, key);
+        release(key);
+        removeGauges(service);
+    }
+
+    private static void dismiss(final String service, final ClientKey key) {
+        final PooledClient pooledClient = key == null ? null : clients.get(key);
+        if (pooledClient != null) {
+            pooledClient.dismiss(service);
+        }
+    }
+
+    //Calls the commands of a service can have in flight: the hystrix semaphore of each api, or of the service for apis sharing its pool
+    private static int maxCalls(final RevolverHttpServiceConfig serviceConfiguration) {
+        final ThreadPoolConfig servicePool = threadPool(serviceConfiguration.getRuntime(), new ThreadPoolConfig());
+        int calls = 0;
+        boolean sharedPool = false;
+        if (serviceConfiguration.getApis() != null) {
+            for (RevolverHttpApiConfig api : serviceConfiguration.getApis()) {
+                if (api.isSharedPool()) {
+                    sharedPool = true;
+                } else {
+                    calls += threadPool(api.getRuntime(), servicePool).getConcurrency();
+                }
+            }
+        }
+        if (sharedPool) {
+            calls += servicePool.getConcurrency();
+        }
+        return Math.max(calls, 1);
     }
 
-    private static OkHttpClient getOkHttpClient(RevolverHttpServiceConfig serviceConfiguration) throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException, KeyManagementException, UnrecoverableKeyException {
+    private static ThreadPoolConfig threadPool(final HystrixCommandConfig runtime, final ThreadPoolConfig fallback) {
+        return runtime == null || runtime.getThreadPool() == null ? fallback : runtime.getThreadPool();
+    }
+
+    private static void release(final ClientKey key) {
+        if (key == null || serviceClients.containsValue(key)) {
+            return;
+        }
+        final PooledClient pooledClient = clients.remove(key);
+        if (pooledClient != null) {
+            //In flight calls complete on their own; dispatcher threads die off once idle
+            pooledClient.client.connectionPool().evictAll();
+            log.info("Released http client for endpoint: {}", key);
+        }
+    }
+
+    private static void registerGauges(final String service) {
+        if (metrics == null || metrics.getGauges().containsKey(MetricRegistry.name("revolver", "http", "pool", service, "idle"))) {
+            return;
+        }
+        metrics.register(MetricRegistry.name("revolver", "http", "pool", service, "idle"),
+                (Gauge<Integer>) () -> poolStat(service, pool -> pool.client.connectionPool().idleConnectionCount()));
+        metrics.register(MetricRegistry.name("revolver", "http", "pool", service, "active"),
+                (Gauge<Integer>) () -> poolStat(service, pool -> pool.client.connectionPool().connectionCount()
+                        - pool.client.connectionPool().idleConnectionCount()));
+        metrics.register(MetricRegistry.name("revolver", "http", "pool", service, "evicted"),
+                (Gauge<Long>) () -> poolStat(service, PooledClient::evicted));
+        //Calls of this service on the wire; with http/2 these are multiplexed over the pooled connections of the shared client
+        metrics.register(MetricRegistry.name("revolver", "http", "pool", service, "inflight"),
+                (Gauge<Integer>) () -> poolStat(service, pool -> inflight(service).get()));
+    }
+
+    private static void removeGauges(final String service) {
+        if (metrics != null) {
+            metrics.removeMatching((name, metric) -> name.startsWith(MetricRegistry.name("revolver", "http", "pool", service) + "."));
+        }
+        inflight.remove(service);
+    }
+
+    private static AtomicInteger inflight(final String service) {
+        return inflight.computeIfAbsent(service, key -> new AtomicInteger());
+    }
+
+    private static <T extends Number> T poolStat(final String service, final Function<PooledClient, T> stat) {
+        final ClientKey key = serviceClients.get(service);
+        final PooledClient pooledClient = key == null ? null : clients.get(key);
+        return pooledClient == null ? null : stat.apply(pooledClient);
+    }
+
+    private static OkHttpClient getOkHttpClient(RevolverHttpServiceConfig serviceConfiguration, EventListener eventListener) throws KeyStoreException, NoSuchAlgorithmException, CertificateException, IOException, KeyManagementException, UnrecoverableKeyException {
         final OkHttpClient.Builder builder = new OkHttpClient.Builder();
         if (serviceConfiguration.isAuthEnabled()) {
             switch (serviceConfiguration.getAuth().getType().toLowerCase()) {
@@ -115,11 +254,12 @@ public class RevolverHttpClientFactory {
         } else {
             builder.connectionPool(new ConnectionPool(serviceConfiguration.getConnectionPoolSize(), serviceConfiguration.getConnectionKeepAliveInMillis(), TimeUnit.MILLISECONDS));
         }
+        final List<Protocol> protocols = protocols(serviceConfiguration);
+        if (protocols != null) {
+            builder.protocols(protocols);
+        }
+        builder.eventListener(eventListener);
         builder.retryOnConnectionFailure(true);
-        builder.connectTimeout(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
-        builder.readTimeout(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
-        builder.writeTimeout(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
-        builder.connectTimeout(Integer.MAX_VALUE, TimeUnit.MILLISECONDS);
         builder.followRedirects(false);
         builder.followSslRedirects(false);
         return builder.build();
@@ -140,4 +280,158 @@ public class RevolverHttpClientFactory {
         clientBuilder.sslSocketFactory(sslContext.getSocketFactory(), (X509TrustManager)trustManagerFactory.getTrustManagers()[0]);
     }
 
+    private static List<Protocol> protocols(final RevolverHttpServiceConfig serviceConfiguration) {
+        if (serviceConfiguration.getProtocol() == null) {
+            return null;
+        }
+        switch (serviceConfiguration.getProtocol()) {
+            case HTTP_1_1:
+                return Collections.singletonList(Protocol.HTTP_1_1);
+            case H2C:
+                if (!serviceConfiguration.isSecured()) {
+                    return Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+                }
+                log.warn("h2c is not supported over tls for service {}; negotiating HTTP/2 instead", serviceConfiguration.getService());
+                return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+            case HTTP_2:
+                return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Client for a single api; shares the connection pool and dispatcher of the service client and only differs in timeouts.
+     * Phases without a configured timeout use the api's execution timeout; streaming apis get no overall call timeout since
+     * the body is read after the command completes.
+     */
+    public static OkHttpClient apiClient(final OkHttpClient client, final String service, final RevolverHttpApiConfig apiConfig, final int executionTimeout) {
+        final RevolverHttpTimeoutConfig timeouts = apiConfig.getTimeouts() == null ? new RevolverHttpTimeoutConfig() : apiConfig.getTimeouts();
+        final AtomicInteger calls = inflight(service);
+        return client.newBuilder()
+                .addInterceptor(chain -> {
+                    calls.incrementAndGet();
+                    try {
+                        return chain.proceed(chain.request());
+                    } finally {
+                        calls.decrementAndGet();
+                    }
+                })
+                .connectTimeout(timeout(timeouts.getConnectTimeout(), executionTimeout), TimeUnit.MILLISECONDS)
+                .readTimeout(timeout(timeouts.getReadTimeout(), executionTimeout), TimeUnit.MILLISECONDS)
+                .writeTimeout(timeout(timeouts.getWriteTimeout(), executionTimeout), TimeUnit.MILLISECONDS)
+                .callTimeout(apiConfig.isStreaming() ? timeouts.getCallTimeout() : timeout(timeouts.getCallTimeout(), executionTimeout), TimeUnit.MILLISECONDS)
+                //A streamed request body can only be sent once; never replay it on another connection
+                .retryOnConnectionFailure(!apiConfig.isStreaming())
+                .build();
+    }
+
+    private static int timeout(final int configured, final int executionTimeout) {
+        return configured > 0 ? configured : executionTimeout;
+    }
+
+    private static String endpointKey(final EndpointSpec endpoint) {
+        if (endpoint instanceof SimpleEndpointSpec) {
+            return String.format("%s:%d", ((SimpleEndpointSpec) endpoint).getHost(), ((SimpleEndpointSpec) endpoint).getPort());
+        } else if (endpoint instanceof RangerEndpointSpec) {
+            return String.format("ranger:%s:%s", ((RangerEndpointSpec) endpoint).getService(), ((RangerEndpointSpec) endpoint).getEnvironment());
+        }
+        return String.valueOf(endpoint);
+    }
+
+    private static String authKey(final RevolverHttpServiceConfig serviceConfiguration) {
+        if (!serviceConfiguration.isAuthEnabled() || serviceConfiguration.getAuth() == null) {
+            return null;
+        }
+        if (serviceConfiguration.getAuth() instanceof BasicAuthConfig) {
+            val basicAuthConfig = (BasicAuthConfig) serviceConfiguration.getAuth();
+            return String.join(":", "basic", basicAuthConfig.getUsername(), basicAuthConfig.getPassword());
+        } else if (serviceConfiguration.getAuth() instanceof TokenAuthConfig) {
+            val tokenAuthConfig = (TokenAuthConfig) serviceConfiguration.getAuth();
+            return String.join(":", "token", Strings.nullToEmpty(tokenAuthConfig.getPrefix()), tokenAuthConfig.getToken());
+        }
+        return serviceConfiguration.getAuth().getType();
+    }
+
+    /**
+     * Connection relevant part of the service configuration; apis, tracking headers etc. don't need a separate client
+     */
+    @Value
+    private static class ClientKey {
+        String endpoint;
+        boolean secured;
+        String keyStorePath;
+        @ToString.Exclude
+        String keystorePassword;
+        @ToString.Exclude
+        String auth;
+        int connectionPoolSize;
+        int connectionKeepAliveInMillis;
+        boolean nonBlocking;
+        RevolverHttpServiceConfig.HttpProtocol protocol;
+
+        private static ClientKey of(final RevolverHttpServiceConfig serviceConfiguration) {
+            return new ClientKey(endpointKey(serviceConfiguration.getEndpoint()), serviceConfiguration.isSecured(),
+                    serviceConfiguration.getKeyStorePath(), serviceConfiguration.getKeystorePassword(), authKey(serviceConfiguration),
+                    serviceConfiguration.getConnectionPoolSize(), serviceConfiguration.getConnectionKeepAliveInMillis(),
+                    serviceConfiguration.isNonBlocking(), serviceConfiguration.getProtocol());
+        }
+    }
+
+    private static class PooledClient {
+        private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+        private final AtomicLong evicted = new AtomicLong();
+        //Most calls each non blocking service sharing the client can have in flight
+        private final Map<String, Integer> calls = new ConcurrentHashMap<>();
+        private OkHttpClient client;
+
+        private void admit(final String service, final int maxCalls) {
+            calls.put(service, maxCalls);
+            limit();
+        }
+
+        private void dismiss(final String service) {
+            if (calls.remove(service) != null) {
+                limit();
+            }
+        }
+
+        //OkHttp runs every enqueued call on a dispatcher thread (its io is blocking) and queues calls past its limits where
+        //hystrix timeouts can't see them. Calls are already bounded by the hystrix semaphores of the services sharing the
+        //client, so the dispatcher lets all of those through; with http/2 they are multiplexed over the pooled connections.
+        private void limit() {
+            final int maxRequests = Math.max(calls.values().stream().mapToInt(Integer::intValue).sum(), 1);
+            client.dispatcher().setMaxRequests(maxRequests);
+            client.dispatcher().setMaxRequestsPerHost(maxRequests);
+        }
+
+        private long evicted() {
+            sweep();
+            return evicted.get();
+        }
+
+        //The pool closes connections it evicts without an event; count them once their socket is seen closed
+        private void sweep() {
+            connections.forEach(connection -> {
+                if (connection.socket().isClosed() && connections.remove(connection)) {
+                    evicted.incrementAndGet();
+                }
+            });
+        }
+
+        private EventListener listener() {
+            return new EventListener() {
+                @Override
+                public void connectionAcquired(final Call call, final Connection connection) {
+                    connections.add(connection);
+                }
+
+                @Override
+                public void connectionReleased(final Call call, final Connection connection) {
+                    sweep();
+                }
+            };
+        }
+    }
+
 }
@@ -17,15 +17,20 @@
 
 package io.dropwizard.revolver.http;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
+import io.dropwizard.revolver.RevolverBundle;
 import io.dropwizard.revolver.core.RevolverCommand;
 import io.dropwizard.revolver.core.config.ClientConfig;
 import io.dropwizard.revolver.core.config.RuntimeConfig;
 import io.dropwizard.revolver.core.tracing.TraceCollector;
 import io.dropwizard.revolver.core.util.RevolverCommandHelper;
+import io.dropwizard.revolver.discovery.NodeSelector;
 import io.dropwizard.revolver.discovery.RevolverServiceResolver;
 import io.dropwizard.revolver.discovery.model.Endpoint;
+import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
 import io.dropwizard.revolver.exception.RevolverException;
+import io.dropwizard.revolver.http.cache.ResponseCache;
 import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
 import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
 import io.dropwizard.revolver.http.model.RevolverHttpRequest;
@@ -34,8 +39,10 @@ import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import okhttp3.*;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.StrSubstitutor;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedHashMap;
@@ -46,9 +53,12 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -63,18 +73,30 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
     public static final String CALL_MODE_CALLBACK_SYNC = "CALLBACK_SYNC";
 
     private final RevolverServiceResolver serviceResolver;
+    private final NodeSelector selector;
     private final OkHttpClient client;
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final Map<String, RequestPlan> plans;
 
     @Builder
     public RevolverHttpCommand(final RuntimeConfig runtimeConfig, final ClientConfig clientConfiguration,
                                final RevolverHttpServiceConfig serviceConfiguration,
                                final Map<String, RevolverHttpApiConfig> apiConfigurations,
-                               final TraceCollector traceCollector, final RevolverServiceResolver serviceResolver)
+                               final TraceCollector traceCollector, final RevolverServiceResolver serviceResolver,
+                               final Executor asyncExecutor)
             throws CertificateException, NoSuchAlgorithmException, KeyStoreException,
             IOException, KeyManagementException, UnrecoverableKeyException, ExecutionException {
-        super(new RevolverHttpContext(), clientConfiguration, runtimeConfig, serviceConfiguration, apiConfigurations, traceCollector);
+        super(new RevolverHttpContext(), clientConfiguration, runtimeConfig, serviceConfiguration, apiConfigurations, traceCollector, asyncExecutor);
         (this.serviceResolver = serviceResolver).register(serviceConfiguration.getEndpoint());
+        this.selector = serviceResolver.selector(serviceConfiguration.getEndpoint());
         this.client = RevolverHttpClientFactory.buildClient(serviceConfiguration);
+        this.plans = apiConfigurations.values().stream()
+                .collect(Collectors.toMap(RevolverHttpApiConfig::getApi,
+                        apiConfig -> new RequestPlan(apiConfig,
+                                RevolverHttpClientFactory.apiClient(client, serviceConfiguration.getService(), apiConfig, RevolverCommandHelper.getTimeout(this, apiConfig.getApi())),
+                                serviceConfiguration.isSecured(), coalescer(serviceConfiguration, apiConfig), cache(serviceConfiguration, apiConfig),
+                                hedging(serviceConfiguration, apiConfig))));
     }
 
     @Override
@@ -82,34 +104,99 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
         return false;
     }
 
+    @Override
+    public boolean isNonBlocking() {
+        return getServiceConfiguration().isNonBlocking();
+    }
+
+    @Override
+    protected MetricRegistry getMetrics() {
+        return RevolverBundle.getMetrics();
+    }
+
+    /**
+     * GETs of apis with a response cache are served from it when possible; identical GETs of apis that opt into
+     * coalescing share a single in flight execution
+     */
+    @Override
+    public CompletableFuture<RevolverHttpResponse> executeAsync(final RevolverHttpRequest request) {
+        final RequestPlan plan = request == null ? null : plans.get(request.getApi());
+        if (plan == null || request.getMethod() != RevolverHttpApiConfig.RequestMethod.GET) {
+            return super.executeAsync(request);
+        }
+        final String path = plan.path(request);
+        if (plan.getCache() != null) {
+            return plan.getCache().execute(request, path, downstream -> coalesced(plan, downstream, path));
+        }
+        return coalesced(plan, request, path);
+    }
+
+    private CompletableFuture<RevolverHttpResponse> coalesced(final RequestPlan plan, final RevolverHttpRequest request, final String path) {
+        //Conditional requests may be answered with a 304 that only makes sense to the caller that sent them
+        if (plan.getCoalescer() == null || ResponseCache.isConditional(request)) {
+            return super.executeAsync(request);
+        }
+        return plan.getCoalescer().execute(request, path, () -> super.executeAsync(request));
+    }
+
+    private static RequestCoalescer coalescer(final RevolverHttpServiceConfig serviceConfiguration, final RevolverHttpApiConfig apiConfig) {
+        //Streamed bodies can be read only once, so they can't be fanned out
+        if (!apiConfig.isCoalesce() || apiConfig.isStreaming()) {
+            return null;
+        }
+        return new RequestCoalescer(serviceConfiguration.getService(), apiConfig, RevolverBundle.getMetrics());
+    }
+
+    private static ResponseCache cache(final RevolverHttpServiceConfig serviceConfiguration, final RevolverHttpApiConfig apiConfig) {
+        if (apiConfig.getCache() == null || !apiConfig.getCache().isEnabled() || apiConfig.isStreaming()) {
+            return null;
+        }
+        return new ResponseCache(serviceConfiguration.getService(), apiConfig, RevolverBundle.getMetrics());
+    }
+
+    private static HedgingPolicy hedging(final RevolverHttpServiceConfig serviceConfiguration, final RevolverHttpApiConfig apiConfig) {
+        //A hedge needs another node to go to; streamed responses can't be raced and thrown away
+        if (apiConfig.getHedge() == null || !apiConfig.getHedge().isEnabled() || apiConfig.isStreaming()
+                || !(serviceConfiguration.getEndpoint() instanceof RangerEndpointSpec)) {
+            return null;
+        }
+        return new HedgingPolicy(serviceConfiguration.getService(), apiConfig, RevolverBundle.getMetrics());
+    }
+
     @Override
     protected RevolverHttpResponse execute(final RevolverHttpContext context, final RevolverHttpRequest request) throws Exception {
+        return execute(context, request, new Cancellation());
+    }
+
+    @Override
+    protected RevolverHttpResponse execute(final RevolverHttpContext context, final RevolverHttpRequest request, final Cancellation cancellation) throws Exception {
         final RevolverHttpApiConfig apiConfig = getApiConfigurations().get(request.getApi());
         if(apiConfig.getMethods().contains(request.getMethod())) {
-            switch (request.getMethod()) {
-                case GET: {
-                    return doGet(request);
-                }
-                case POST: {
-                    return doPost(request);
-                }
-                case PUT: {
-                    return doPut(request);
-                }
-                case DELETE: {
-                    return doDelete(request);
-                }
-                case HEAD: {
-                    return doHead(request);
-                }
-                case OPTIONS: {
-                    return doOptions(request);
-                }
-                case PATCH: {
-                    return doPatch(request);
-                }
+            final HedgingPolicy hedging = plan(apiConfig).getHedging();
+            if (hedging != null && hedging.applies(request)) {
+                final CompletableFuture<RevolverHttpResponse> response = hedged(apiConfig, hedging, request, readBody(request));
+                cancellation.onCancel(() -> response.cancel(true));
+                return await(response);
+            }
+            return executeRequest(apiConfig, buildRequest(apiConfig, request), readBody(request), cancellation);
+        }
+        return methodNotAllowed(apiConfig, request);
+    }
+
+    @Override
+    protected CompletableFuture<RevolverHttpResponse> executeNonBlocking(final RevolverHttpContext context, final RevolverHttpRequest request) throws Exception {
+        final RevolverHttpApiConfig apiConfig = getApiConfigurations().get(request.getApi());
+        if(apiConfig.getMethods().contains(request.getMethod())) {
+            final HedgingPolicy hedging = plan(apiConfig).getHedging();
+            if (hedging != null && hedging.applies(request)) {
+                return hedged(apiConfig, hedging, request, readBody(request));
             }
+            return enqueueRequest(apiConfig, buildRequest(apiConfig, request), readBody(request));
         }
+        return CompletableFuture.completedFuture(methodNotAllowed(apiConfig, request));
+    }
+
+    private RevolverHttpResponse methodNotAllowed(final RevolverHttpApiConfig apiConfig, final RevolverHttpRequest request) {
         MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
         headers.putSingle("X-REQUEST-PATH", request.getPath());
         headers.putSingle("X-REQUEST-METHOD", request.getMethod().name());
@@ -125,7 +212,7 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
         return null;
     }
 
-    private HttpUrl getServiceUrl(final RevolverHttpRequest request, final RevolverHttpApiConfig apiConfiguration) throws RevolverException {
+    private Endpoint resolveEndpoint(final RevolverHttpRequest request) throws RevolverException {
         Endpoint endpoint = this.serviceResolver.resolve((this.getServiceConfiguration()).getEndpoint());
         if(endpoint == null) {
             if(Strings.isNullOrEmpty(getServiceConfiguration().getFallbackAddress())) {
@@ -144,149 +231,230 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
                         .build();
             }
         }
-        return generateURI(request, apiConfiguration, endpoint);
+        return endpoint;
     }
 
-    private RevolverHttpResponse executeRequest(final RevolverHttpApiConfig apiConfiguration, final Request request, final boolean readBody) throws Exception {
+    private RevolverHttpResponse executeRequest(final RevolverHttpApiConfig apiConfiguration, final Request request,
+                                                final boolean readBody, final Cancellation cancellation) throws Exception {
+        //Registered with this execution so that a hystrix timeout can abort the call and release its connection
+        final Call call = clientFor(apiConfiguration).newCall(request);
+        cancellation.onCancel(call::cancel);
+        final Endpoint node = started(request);
+        long start = System.currentTimeMillis();
         try {
-            long start = System.currentTimeMillis();
-            val response = client.newCall(request).execute();
-            long end = System.currentTimeMillis();
+            val response = call.execute();
             val httpResponse = getHttpResponse(apiConfiguration, response, readBody);
-            log.info("[{}/{}] {} {}:{}{} {} {}ms", apiConfiguration.getApi(), apiConfiguration.getPath(),
-                    request.method(), request.url().host(), request.url().port(), request.url().encodedPath(),
-                    httpResponse.getStatusCode(), (end-start));
+            completed(node, start, httpResponse.getStatusCode() < 500);
+            logResponse(apiConfiguration, request, httpResponse, start);
             return httpResponse;
         } catch (Exception e) {
-            log.error("Error running HTTP GET call: ", e);
+            //Blocking calls are only cancelled by hystrix timeouts
+            completed(node, start, false);
+            log.error("Error running HTTP {} call: ", request.method(), e);
             throw e;
         }
     }
 
-    private RevolverHttpResponse doGet(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        httpRequest.get();
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
-        }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
+    private OkHttpClient clientFor(final RevolverHttpApiConfig apiConfiguration) {
+        final RequestPlan plan = plans.get(apiConfiguration.getApi());
+        return plan == null ? client : plan.getClient();
     }
 
-    private RevolverHttpResponse doOptions(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        httpRequest.method("OPTIONS", null);
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
+    private RequestPlan plan(final RevolverHttpApiConfig apiConfiguration) {
+        final RequestPlan plan = plans.get(apiConfiguration.getApi());
+        return plan == null ? new RequestPlan(apiConfiguration, client, getServiceConfiguration().isSecured()) : plan;
+    }
+
+    private CompletableFuture<RevolverHttpResponse> enqueueRequest(final RevolverHttpApiConfig apiConfiguration, final Request request, final boolean readBody) {
+        final CompletableFuture<RevolverHttpResponse> result = new CompletableFuture<>();
+        final long start = System.currentTimeMillis();
+        final Call call = clientFor(apiConfiguration).newCall(request);
+        final Endpoint node = started(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                if (HedgingPolicy.lost(result)) {
+                    abandoned(node);
+                } else {
+                    completed(node, start, false);
+                }
+                log.error("Error running HTTP {} call: ", request.method(), e);
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                boolean streamed = false;
+                try {
+                    val httpResponse = getHttpResponse(apiConfiguration, response, readBody);
+                    streamed = httpResponse.getBodyStream() != null;
+                    completed(node, start, httpResponse.getStatusCode() < 500);
+                    logResponse(apiConfiguration, request, httpResponse, start);
+                    deliver(result, httpResponse, response);
+                } catch (Exception e) {
+                    completed(node, start, false);
+                    log.error("Error running HTTP {} call: ", request.method(), e);
+                    result.completeExceptionally(e);
+                } finally {
+                    //Streamed bodies are closed by the consumer once fully written out
+                    if (!streamed) {
+                        response.close();
+                    }
+                }
+            }
+        });
+        //Cancellation comes from hystrix timeouts; abort the in-flight call so the connection is released
+        result.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                call.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Hands the response to whoever waits for it. A streamed body is closed by its consumer, unless there is none left
+     * (the call was cancelled by a timeout or lost its hedge), in which case it is closed here to give back the connection
+     */
+    static void deliver(final CompletableFuture<RevolverHttpResponse> result, final RevolverHttpResponse httpResponse, final Response response) {
+        if (!result.complete(httpResponse) && httpResponse.getBodyStream() != null) {
+            response.close();
         }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
     }
 
-    private RevolverHttpResponse doHead(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        httpRequest.head();
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
+    /**
+     * Sends the request to the resolved node and, if it hasn't answered within the policy's delay, a second one to
+     * another healthy node
+     */
+    private CompletableFuture<RevolverHttpResponse> hedged(final RevolverHttpApiConfig apiConfiguration, final HedgingPolicy hedging,
+                                                           final RevolverHttpRequest request, final boolean readBody) throws RevolverException {
+        final Endpoint primary = resolveEndpoint(request);
+        return hedging.execute(enqueueRequest(apiConfiguration, buildRequest(apiConfiguration, request, primary), readBody), () -> {
+            final Endpoint other = serviceResolver.resolveOther(getServiceConfiguration().getEndpoint(), primary);
+            return other == null ? null : enqueueRequest(apiConfiguration, buildRequest(apiConfiguration, request, other), readBody);
+        });
+    }
+
+    private static RevolverHttpResponse await(final CompletableFuture<RevolverHttpResponse> response) throws Exception {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            //Interrupted by a hystrix timeout
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), false);
     }
 
-    private RevolverHttpResponse doDelete(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        httpRequest.delete();
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
+    private Endpoint started(final Request request) {
+        if (selector == null) {
+            return null;
         }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
+        final Endpoint node = Endpoint.builder().host(request.url().host()).port(request.url().port()).build();
+        selector.started(node);
+        return node;
     }
 
-    private RevolverHttpResponse doPatch(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
+    //Calls cancelled by a timeout count as failures of their node
+    private void completed(final Endpoint node, final long start, final boolean success) {
+        if (node != null) {
+            selector.completed(node, System.currentTimeMillis() - start, success);
         }
-        if(request.getBody() != null) {
-            if(null != request.getHeaders() && StringUtils.isNotBlank(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)))
-                httpRequest.patch(RequestBody.create(MediaType.parse(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)), request.getBody()));
-            else
-                httpRequest.patch(RequestBody.create(MediaType.parse("*/*"), request.getBody()));
-        } else {
-            httpRequest.patch(RequestBody.create(MediaType.parse("*/*"), new byte[0]));
+    }
+
+    private void abandoned(final Endpoint node) {
+        if (node != null) {
+            selector.abandoned(node);
         }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
     }
 
-    private RevolverHttpResponse doPost(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
+    private void logResponse(final RevolverHttpApiConfig apiConfiguration, final Request request, final RevolverHttpResponse httpResponse, final long start) {
+        log.info("[{}/{}] {} {}:{}{} {} {}ms", apiConfiguration.getApi(), apiConfiguration.getPath(),
+                request.method(), request.url().host(), request.url().port(), request.url().encodedPath(),
+                httpResponse.getStatusCode(), (System.currentTimeMillis() - start));
+    }
+
+    private boolean readBody(final RevolverHttpRequest request) {
+        return request.getMethod() != RevolverHttpApiConfig.RequestMethod.HEAD;
+    }
+
+    private Request buildRequest(final RevolverHttpApiConfig apiConfiguration, final RevolverHttpRequest request) throws RevolverException {
+        return buildRequest(apiConfiguration, request, resolveEndpoint(request));
+    }
+
+    private Request buildRequest(final RevolverHttpApiConfig apiConfiguration, final RevolverHttpRequest request, final Endpoint endpoint) {
+        val url = plan(apiConfiguration).url(endpoint, request);
+        addQueryParams(request, url);
         val httpRequest = new Request.Builder()
-                .url(url);
+                .url(url.build());
         if (null != request.getHeaders()) {
-            request.getHeaders()
-                    .forEach((key, values) ->
-                            values.forEach(value ->
-                                    httpRequest.addHeader(key, value)));
+            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
         }
-        if(request.getBody() != null) {
-            if(null != request.getHeaders() && StringUtils.isNotBlank(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)))
-                httpRequest.post(RequestBody.create(MediaType.parse(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)), request.getBody()));
-            else
-                httpRequest.post(RequestBody.create(MediaType.parse("*/*"), request.getBody()));
-        } else {
-            httpRequest.post(RequestBody.create(MediaType.parse("*/*"), new byte[0]));
+        switch (request.getMethod()) {
+            case GET:
+                httpRequest.get();
+                break;
+            case HEAD:
+                httpRequest.head();
+                break;
+            case DELETE:
+                httpRequest.delete();
+                break;
+            case OPTIONS:
+                httpRequest.method("OPTIONS", null);
+                break;
+            case POST:
+                httpRequest.post(requestBody(request));
+                break;
+            case PUT:
+                httpRequest.put(requestBody(request));
+                break;
+            case PATCH:
+                httpRequest.patch(requestBody(request));
+                break;
         }
         trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
+        return httpRequest.build();
     }
 
-    private RevolverHttpResponse doPut(final RevolverHttpRequest request) throws Exception {
-        val apiConfiguration = this.getApiConfigurations().get(request.getApi());
-        val url = getServiceUrl(request, apiConfiguration);
-        val httpRequest = new Request.Builder()
-                .url(url);
-        if (null != request.getHeaders()) {
-            request.getHeaders().forEach((key, values) -> values.forEach(value -> httpRequest.addHeader(key, value)));
+    private RequestBody requestBody(final RevolverHttpRequest request) {
+        final MediaType mediaType = RequestPlan.mediaType(null == request.getHeaders() ? null : request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        if(request.getBodyStream() != null) {
+            return streamingBody(mediaType, request);
         }
-        if(request.getBody() != null) {
-            if(null != request.getHeaders() && StringUtils.isNotBlank(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)))
-                httpRequest.put(RequestBody.create(MediaType.parse(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE)), request.getBody()));
-            else
-                httpRequest.put(RequestBody.create(MediaType.parse("*/*"), request.getBody()));
-        } else {
-            httpRequest.put(RequestBody.create(MediaType.parse("*/*"), new byte[0]));
+        if(request.getBody() == null) {
+            return RequestBody.create(RequestPlan.ANY, EMPTY_BODY);
         }
-        trackingHeaders(request, httpRequest);
-        return executeRequest(apiConfiguration, httpRequest.build(), true);
+        return RequestBody.create(mediaType, request.getBody());
     }
 
-    private HttpUrl generateURI(final RevolverHttpRequest request, final RevolverHttpApiConfig apiConfiguration, final Endpoint endpoint) {
-        val builder = new HttpUrl.Builder();
-        addQueryParams(request, builder);
-        if (getServiceConfiguration().isSecured())
-            builder.scheme("https");
-        else
-            builder.scheme("http");
-        builder.host(endpoint.getHost()).port(endpoint.getPort()).encodedPath(resolvePath(apiConfiguration, request));
-        return builder.build();
+    private RequestBody streamingBody(final MediaType mediaType, final RevolverHttpRequest request) {
+        final String length = request.getHeaders() == null ? null : request.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH);
+        final long contentLength = StringUtils.isNumeric(length) ? Long.parseLong(length) : -1L;
+        final AtomicBoolean consumed = new AtomicBoolean();
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(final BufferedSink sink) throws IOException {
+                if (!consumed.compareAndSet(false, true)) {
+                    throw new IOException("Streamed request body can't be sent again");
+                }
+                try (Source source = Okio.source(request.getBodyStream())) {
+                    sink.writeAll(source);
+                }
+            }
+        };
     }
 
     private RevolverHttpResponse getHttpResponse(final RevolverHttpApiConfig apiConfiguration, final Response response, final boolean readBody) throws Exception {
@@ -303,24 +471,13 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
                 .statusCode(response.code())
                 .headers(headers);
         if(readBody && response.body() != null) {
-            revolverResponse.body(response.body().bytes());
-        }
-        return revolverResponse.build();
-    }
-
-    private String resolvePath(final RevolverHttpApiConfig httpApiConfiguration, final RevolverHttpRequest request) {
-        String uri = null;
-        if (Strings.isNullOrEmpty(request.getPath())) {
-            if (null != request.getPathParams()) {
-                uri = StrSubstitutor.replace(httpApiConfiguration.getPath(), request.getPathParams());
+            if(apiConfiguration.isStreaming()) {
+                revolverResponse.bodyStream(response.body().byteStream());
+            } else {
+                revolverResponse.body(response.body().bytes());
             }
-        } else {
-            uri = request.getPath();
-        }
-        if (Strings.isNullOrEmpty(uri)) {
-            uri = httpApiConfiguration.getPath();
         }
-        return uri.charAt(0) == '/' ? uri : "/" + uri;
+        return revolverResponse.build();
     }
 
     private void addQueryParams(final RevolverHttpRequest request, final HttpUrl.Builder builder) {
@@ -337,22 +494,30 @@ public class RevolverHttpCommand extends RevolverCommand<RevolverHttpRequest, Re
         if(request.getHeaders() == null) {
             request.setHeaders(new MultivaluedHashMap<>());
         }
-        List<String> existing = request.getHeaders().keySet().stream().map(String::toLowerCase).collect(Collectors.toList());
-        if (!existing.contains(RevolversHttpHeaders.TXN_ID_HEADER.toLowerCase())) {
+        if (!hasHeader(request, RevolversHttpHeaders.TXN_ID_HEADER)) {
             requestBuilder.addHeader(RevolversHttpHeaders.TXN_ID_HEADER, spanInfo.getTransactionId());
         }
-        if (!existing.contains(RevolversHttpHeaders.REQUEST_ID_HEADER.toLowerCase())) {
+        if (!hasHeader(request, RevolversHttpHeaders.REQUEST_ID_HEADER)) {
             requestBuilder.addHeader(RevolversHttpHeaders.REQUEST_ID_HEADER, spanInfo.getRequestId());
         }
-        if (!existing.contains(RevolversHttpHeaders.PARENT_REQUEST_ID_HEADER.toLowerCase())) {
+        if (!hasHeader(request, RevolversHttpHeaders.PARENT_REQUEST_ID_HEADER)) {
             requestBuilder.addHeader(RevolversHttpHeaders.PARENT_REQUEST_ID_HEADER, spanInfo.getParentRequestId());
         }
-        if (!existing.contains(RevolversHttpHeaders.TIMESTAMP_HEADER.toLowerCase())) {
+        if (!hasHeader(request, RevolversHttpHeaders.TIMESTAMP_HEADER)) {
             requestBuilder.addHeader(RevolversHttpHeaders.TIMESTAMP_HEADER, Long.toString(spanInfo.getTimestamp()));
         }
-        if (!existing.contains(RevolversHttpHeaders.CLIENT_HEADER.toLowerCase())) {
+        if (!hasHeader(request, RevolversHttpHeaders.CLIENT_HEADER)) {
             requestBuilder.addHeader(RevolversHttpHeaders.CLIENT_HEADER, this.getClientConfiguration().getClientName());
         }
     }
 
+    private static boolean hasHeader(final RevolverHttpRequest request, final String header) {
+        for (String name : request.getHeaders().keySet()) {
+            if (name.equalsIgnoreCase(header)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
@@ -34,5 +34,6 @@ public interface RevolversHttpHeaders {
     String CALLBACK_TIMEOUT_HEADER = "X-CALLBACK-TIMEOUT";
     String CALLBACK_METHOD_HEADER = "X-CALLBACK-METHOD";
     String CALLBACK_RESPONSE_CODE = "X-RESPONSE-CODE";
+    String PRIORITY_HEADER = "X-REQUEST-PRIORITY";
 
 }
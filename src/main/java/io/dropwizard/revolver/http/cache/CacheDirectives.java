@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.cache;
+
+import com.google.common.base.Strings;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The subset of Cache-Control directives that matter to a shared cache
+ * @author phaneesh
+ */
+@Getter
+class CacheDirectives {
+
+    static final CacheDirectives NONE = new CacheDirectives();
+
+    private boolean noStore;
+
+    private boolean noCache;
+
+    private boolean privateResponse;
+
+    private boolean publicResponse;
+
+    private int maxAge = -1;
+
+    private int sMaxAge = -1;
+
+    private int staleWhileRevalidate = -1;
+
+    static CacheDirectives parse(final String cacheControl) {
+        if (Strings.isNullOrEmpty(cacheControl)) {
+            return NONE;
+        }
+        final CacheDirectives directives = new CacheDirectives();
+        for (String token : cacheControl.split(",")) {
+            final String directive = token.trim();
+            final int eq = directive.indexOf('=');
+            final String name = (eq < 0 ? directive : directive.substring(0, eq)).trim().toLowerCase();
+            final String value = eq < 0 ? null : StringUtils.strip(directive.substring(eq + 1).trim(), "\"");
+            switch (name) {
+                case "no-store":
+                    directives.noStore = true;
+                    break;
+                case "no-cache":
+                    directives.noCache = true;
+                    break;
+                case "private":
+                    directives.privateResponse = true;
+                    break;
+                case "public":
+                    directives.publicResponse = true;
+                    break;
+                case "max-age":
+                    directives.maxAge = seconds(value);
+                    break;
+                case "s-maxage":
+                    directives.sMaxAge = seconds(value);
+                    break;
+                case "stale-while-revalidate":
+                    directives.staleWhileRevalidate = seconds(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * Freshness lifetime in seconds for a shared cache; s-maxage wins over max-age and -1 means none was given
+     */
+    int freshness() {
+        if (noCache) {
+            return 0;
+        }
+        return sMaxAge >= 0 ? sMaxAge : maxAge;
+    }
+
+    private static int seconds(final String value) {
+        if (!StringUtils.isNumeric(value)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            //Larger than an int is as good as forever
+            return Integer.MAX_VALUE;
+        }
+    }
+}
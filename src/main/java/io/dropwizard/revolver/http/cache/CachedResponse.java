@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.cache;
+
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored upstream response along with its freshness window (all times are epoch millis)
+ * @author phaneesh
+ */
+@Getter
+@AllArgsConstructor
+class CachedResponse {
+
+    //Rough per entry overhead for the key, headers and bookkeeping, so that tiny bodies still weigh something
+    private static final int OVERHEAD = 512;
+
+    private final int statusCode;
+
+    private final MultivaluedMap<String, String> headers;
+
+    private final byte[] body;
+
+    private final String etag;
+
+    private final long storedAt;
+
+    private final long freshUntil;
+
+    private final long staleUntil;
+
+    boolean isFresh(final long now) {
+        return now < freshUntil;
+    }
+
+    boolean isServableStale(final long now) {
+        return now < staleUntil;
+    }
+
+    boolean isUsable(final long now) {
+        return isServableStale(now) || etag != null;
+    }
+
+    int weight() {
+        return OVERHEAD + (body == null ? 0 : body.length);
+    }
+
+    CachedResponse withBody(final byte[] body) {
+        return new CachedResponse(statusCode, headers, body, etag, storedAt, freshUntil, staleUntil);
+    }
+
+    CachedResponse refreshed(final long now, final long freshUntil, final long staleUntil) {
+        return new CachedResponse(statusCode, headers, body, etag, now, freshUntil, staleUntil);
+    }
+
+    RevolverHttpResponse toResponse(final long now) {
+        final MultivaluedMap<String, String> copy = new MultivaluedHashMap<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Age")) {
+                copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+            }
+        }
+        copy.putSingle("Age", Long.toString(Math.max(0, now - storedAt) / 1000));
+        return RevolverHttpResponse.builder()
+                .statusCode(statusCode)
+                .headers(copy)
+                .body(body)
+                .build();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.cache;
+
+import com.codahale.metrics.Meter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second tier for entries evicted from the heap tier. Bodies are kept in direct buffers so that large cached payloads
+ * don't add to heap/GC pressure; the buffers are released when their entry is dropped and collected.
+ * @author phaneesh
+ */
+class OffHeapStore {
+
+    private final Cache<String, Slot> slots;
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    OffHeapStore(final long maxBytes, final Meter evictions) {
+        this.slots = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Slot>weigher((key, slot) -> slot.weight)
+                .removalListener(notification -> {
+                    bytes.addAndGet(-notification.getValue().weight);
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        evictions.mark();
+                    }
+                })
+                .build();
+    }
+
+    void put(final String key, final CachedResponse response) {
+        final byte[] body = response.getBody();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(body == null ? 0 : body.length);
+        if (body != null) {
+            buffer.put(body);
+            buffer.flip();
+        }
+        final Slot slot = new Slot(response.withBody(null), buffer, response.weight());
+        bytes.addAndGet(slot.weight);
+        slots.put(key, slot);
+    }
+
+    /**
+     * Removes and returns the entry; callers promote it back to the heap tier
+     */
+    CachedResponse take(final String key) {
+        final Slot slot = slots.asMap().remove(key);
+        if (slot == null) {
+            return null;
+        }
+        final byte[] body = new byte[slot.body.remaining()];
+        slot.body.duplicate().get(body);
+        return slot.response.withBody(body);
+    }
+
+    void invalidate(final String key) {
+        slots.invalidate(key);
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    long size() {
+        return slots.size();
+    }
+
+    private static class Slot {
+        private final CachedResponse response;
+        private final ByteBuffer body;
+        private final int weight;
+
+        private Slot(final CachedResponse response, final ByteBuffer body, final int weight) {
+            this.response = response;
+            this.body = body;
+            this.weight = weight;
+        }
+    }
+}
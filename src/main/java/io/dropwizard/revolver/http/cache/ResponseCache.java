@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpCacheConfig;
+import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Shared (gateway side) cache of GET responses for an api. Freshness comes from the upstream's Cache-Control
+ * (s-maxage, max-age, no-cache, no-store, private, stale-while-revalidate); expired entries with an ETag are
+ * revalidated with If-None-Match. Responses that Vary on headers outside the api's varyHeaders are not stored since
+ * the cache key could not tell their variants apart.
+ * @author phaneesh
+ */
+@Slf4j
+public class ResponseCache {
+
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final RevolverHttpApiConfig apiConfig;
+
+    private final RevolverHttpCacheConfig config;
+
+    private final Set<String> varyHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final Cache<String, CachedResponse> entries;
+
+    private final OffHeapStore offHeap;
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong heapBytes = new AtomicLong();
+
+    private final Meter hits;
+
+    private final Meter misses;
+
+    private final Meter stale;
+
+    private final Meter revalidated;
+
+    private final Meter evictions;
+
+    public ResponseCache(final String service, final RevolverHttpApiConfig apiConfig, final MetricRegistry metrics) {
+        this.apiConfig = apiConfig;
+        this.config = apiConfig.getCache();
+        if (apiConfig.getVaryHeaders() != null) {
+            this.varyHeaders.addAll(apiConfig.getVaryHeaders());
+        }
+        final String prefix = MetricRegistry.name("revolver", "cache", service, apiConfig.getApi());
+        this.hits = metrics.meter(MetricRegistry.name(prefix, "hits"));
+        this.misses = metrics.meter(MetricRegistry.name(prefix, "misses"));
+        this.stale = metrics.meter(MetricRegistry.name(prefix, "stale"));
+        this.revalidated = metrics.meter(MetricRegistry.name(prefix, "revalidated"));
+        this.evictions = metrics.meter(MetricRegistry.name(prefix, "evictions"));
+        this.offHeap = config.getOffHeapSize() > 0 ? new OffHeapStore(config.getOffHeapSize(), evictions) : null;
+        this.entries = CacheBuilder.newBuilder()
+                .maximumWeight(config.getHeapSize())
+                .<String, CachedResponse>weigher((key, entry) -> entry.weight())
+                .removalListener(notification -> {
+                    heapBytes.addAndGet(-notification.getValue().weight());
+                    if (notification.getCause() != RemovalCause.SIZE) {
+                        return;
+                    }
+                    //Heap evictions are demoted to the off heap tier when there is one
+                    if (offHeap != null) {
+                        offHeap.put(notification.getKey(), notification.getValue());
+                    } else {
+                        evictions.mark();
+                    }
+                })
+                .build();
+        //A reload builds a new cache for the api; point the gauges at it
+        register(metrics, MetricRegistry.name(prefix, "ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+        register(metrics, MetricRegistry.name(prefix, "bytes", "heap"), (Gauge<Long>) heapBytes::get);
+        register(metrics, MetricRegistry.name(prefix, "bytes", "offheap"), (Gauge<Long>) () -> offHeap == null ? 0L : offHeap.bytes());
+        register(metrics, MetricRegistry.name(prefix, "entries"), (Gauge<Long>) () -> entries.size() + (offHeap == null ? 0L : offHeap.size()));
+    }
+
+    /**
+     * Serves the request from the cache when possible, otherwise (or to revalidate) calls downstream with the request
+     * to send and stores what comes back
+     */
+    public CompletableFuture<RevolverHttpResponse> execute(final RevolverHttpRequest request, final String path,
+                                                           final Function<RevolverHttpRequest, CompletableFuture<RevolverHttpResponse>> downstream) {
+        final CacheDirectives requested = CacheDirectives.parse(header(request.getHeaders(), HttpHeaders.CACHE_CONTROL));
+        //The client's own conditional requests expect the upstream's answer (a 304) and are passed through untouched
+        if (requested.isNoStore() || isConditional(request)) {
+            return downstream.apply(request);
+        }
+        final String key = key(request, path);
+        if (!requested.isNoCache()) {
+            final long now = System.currentTimeMillis();
+            final CachedResponse entry = lookup(key, now);
+            if (entry != null && entry.isFresh(now)) {
+                hits.mark();
+                return CompletableFuture.completedFuture(entry.toResponse(now));
+            }
+            if (entry != null && entry.isServableStale(now)) {
+                hits.mark();
+                stale.mark();
+                refresh(request, key, entry, downstream);
+                return CompletableFuture.completedFuture(entry.toResponse(now));
+            }
+            if (entry != null && canRevalidate(entry)) {
+                //Still a downstream call, if a cheaper one
+                misses.mark();
+                return revalidate(request, key, entry, downstream);
+            }
+        }
+        misses.mark();
+        return downstream.apply(request).thenApply(response -> {
+            store(key, request, response);
+            return response;
+        });
+    }
+
+    public static boolean isConditional(final RevolverHttpRequest request) {
+        return header(request.getHeaders(), IF_NONE_MATCH) != null || header(request.getHeaders(), IF_MODIFIED_SINCE) != null;
+    }
+
+    private CachedResponse lookup(final String key, final long now) {
+        CachedResponse entry = entries.getIfPresent(key);
+        if (entry == null && offHeap != null) {
+            entry = offHeap.take(key);
+            if (entry != null) {
+                put(key, entry);
+            }
+        }
+        if (entry != null && !entry.isUsable(now)) {
+            entries.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void refresh(final RevolverHttpRequest request, final String key, final CachedResponse entry,
+                         final Function<RevolverHttpRequest, CompletableFuture<RevolverHttpResponse>> downstream) {
+        //One background refresh per entry at a time, however many requests hit it while stale
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            final CompletableFuture<RevolverHttpResponse> refreshed = canRevalidate(entry)
+                    ? revalidate(request, key, entry, downstream)
+                    : downstream.apply(request).thenApply(response -> {
+                        store(key, request, response);
+                        return response;
+                    });
+            refreshed.whenComplete((response, error) -> {
+                refreshing.remove(key);
+                if (error != null) {
+                    log.warn("Background refresh of {} failed: {}", key, error.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            log.warn("Background refresh of {} failed: {}", key, e.getMessage());
+        }
+    }
+
+    private CompletableFuture<RevolverHttpResponse> revalidate(final RevolverHttpRequest request, final String key, final CachedResponse entry,
+                                                               final Function<RevolverHttpRequest, CompletableFuture<RevolverHttpResponse>> downstream) {
+        final MultivaluedMap<String, String> headers = request.getHeaders() == null ? new MultivaluedHashMap<>() : new MultivaluedHashMap<>(request.getHeaders());
+        headers.putSingle(IF_NONE_MATCH, entry.getEtag());
+        final RevolverHttpRequest conditional = RevolverHttpRequest.builder()
+                .service(request.getService())
+                .api(request.getApi())
+                .method(request.getMethod())
+                .traceInfo(request.getTrace())
+                .headers(headers)
+                .queryParams(request.getQueryParams())
+                .pathParams(request.getPathParams())
+                .path(request.getPath())
+                .build();
+        return downstream.apply(conditional).thenApply(response -> {
+            if (response == null || response.getStatusCode() != 304) {
+                store(key, request, response);
+                return response;
+            }
+            revalidated.mark();
+            final long now = System.currentTimeMillis();
+            final CacheDirectives directives = CacheDirectives.parse(header(response.getHeaders(), HttpHeaders.CACHE_CONTROL));
+            //A 304 without Cache-Control keeps the lifetimes the entry was stored with
+            final CachedResponse refreshed = directives == CacheDirectives.NONE
+                    ? entry.refreshed(now, now + (entry.getFreshUntil() - entry.getStoredAt()), now + (entry.getStaleUntil() - entry.getStoredAt()))
+                    : entry.refreshed(now, freshUntil(now, directives, ageOf(response)), freshUntil(now, directives, ageOf(response)) + seconds(staleWindow(directives)));
+            put(key, refreshed);
+            return refreshed.toResponse(now);
+        });
+    }
+
+    private boolean canRevalidate(final CachedResponse entry) {
+        //A 304 would fail the call when the api restricts its acceptable response codes without listing it
+        return entry.getEtag() != null && (apiConfig.getAcceptableResponseCodes() == null
+                || apiConfig.getAcceptableResponseCodes().isEmpty() || apiConfig.getAcceptableResponseCodes().contains(304));
+    }
+
+    private void store(final String key, final RevolverHttpRequest request, final RevolverHttpResponse response) {
+        if (response == null || response.getStatusCode() != 200 || response.getBodyStream() != null) {
+            return;
+        }
+        final CacheDirectives directives = CacheDirectives.parse(header(response.getHeaders(), HttpHeaders.CACHE_CONTROL));
+        final String etag = header(response.getHeaders(), HttpHeaders.ETAG);
+        if (!storable(request, response, directives, etag)) {
+            //Whatever was cached for the key is superseded by this response
+            entries.invalidate(key);
+            if (offHeap != null) {
+                offHeap.invalidate(key);
+            }
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long freshUntil = freshUntil(now, directives, ageOf(response));
+        final CachedResponse entry = new CachedResponse(response.getStatusCode(), new MultivaluedHashMap<>(response.getHeaders()),
+                response.getBody(), etag, now, freshUntil, freshUntil + seconds(staleWindow(directives)));
+        put(key, entry);
+    }
+
+    private boolean storable(final RevolverHttpRequest request, final RevolverHttpResponse response, final CacheDirectives directives, final String etag) {
+        if (response.getBody() == null || response.getBody().length > config.getMaxEntrySize()) {
+            return false;
+        }
+        if (directives.isNoStore() || directives.isPrivateResponse() || (directives.freshness() < 0 && etag == null)) {
+            return false;
+        }
+        //Authorized requests are only shared when the upstream explicitly allows it
+        if (header(request.getHeaders(), HttpHeaders.AUTHORIZATION) != null && !directives.isPublicResponse() && directives.getSMaxAge() < 0) {
+            return false;
+        }
+        return coversVary(response);
+    }
+
+    private static long freshUntil(final long now, final CacheDirectives directives, final int age) {
+        return now + Math.max(0, seconds(Math.max(directives.freshness(), 0)) - seconds(age));
+    }
+
+    private void put(final String key, final CachedResponse entry) {
+        heapBytes.addAndGet(entry.weight());
+        entries.put(key, entry);
+        if (offHeap != null) {
+            offHeap.invalidate(key);
+        }
+    }
+
+    private boolean coversVary(final RevolverHttpResponse response) {
+        final String vary = header(response.getHeaders(), HttpHeaders.VARY);
+        if (vary == null) {
+            return true;
+        }
+        for (String name : vary.split(",")) {
+            final String header = name.trim();
+            if (header.equals("*") || (!header.isEmpty() && !varyHeaders.contains(header))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int staleWindow(final CacheDirectives directives) {
+        return directives.getStaleWhileRevalidate() >= 0 ? directives.getStaleWhileRevalidate() : config.getStaleWhileRevalidate();
+    }
+
+    private String key(final RevolverHttpRequest request, final String path) {
+        final StringBuilder key = new StringBuilder(path);
+        if (request.getQueryParams() != null && !request.getQueryParams().isEmpty()) {
+            //Sorted so that the same query in a different order hits the same entry
+            key.append('?').append(new TreeMap<>(request.getQueryParams()));
+        }
+        for (String header : varyHeaders) {
+            key.append('|').append(header.toLowerCase()).append('=').append(header(request.getHeaders(), header));
+        }
+        return key.toString();
+    }
+
+    private static int ageOf(final RevolverHttpResponse response) {
+        final String age = header(response.getHeaders(), "Age");
+        try {
+            return age == null ? 0 : Integer.parseInt(age.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long seconds(final int seconds) {
+        return seconds * 1000L;
+    }
+
+    private static String header(final MultivaluedMap<String, String> headers, final String header) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(header) && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                return String.join(",", entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    private static void register(final MetricRegistry metrics, final String name, final Gauge<?> gauge) {
+        metrics.remove(name);
+        metrics.register(name, gauge);
+    }
+}
@@ -19,6 +19,7 @@ package io.dropwizard.revolver.http.config;
 
 import io.dropwizard.revolver.core.config.CommandHandlerConfig;
 import io.dropwizard.revolver.core.config.HystrixCommandConfig;
+import io.dropwizard.revolver.core.limiter.RequestPriority;
 import lombok.*;
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -45,6 +46,20 @@ public class RevolverHttpApiConfig extends CommandHandlerConfig {
 
     private boolean whitelist = false;
 
+    private boolean streaming = false;
+
+    private boolean coalesce = false;
+
+    private Set<String> varyHeaders = Collections.emptySet();
+
+    private RevolverHttpTimeoutConfig timeouts = new RevolverHttpTimeoutConfig();
+
+    private RevolverHttpCacheConfig cache = new RevolverHttpCacheConfig();
+
+    private RevolverHttpHedgeConfig hedge = new RevolverHttpHedgeConfig();
+
+    private RequestPriority priority = RequestPriority.NORMAL;
+
     private String acceptType = MediaType.APPLICATION_JSON;
 
     private  String acceptEncoding = "identity";
@@ -60,9 +75,11 @@ public class RevolverHttpApiConfig extends CommandHandlerConfig {
 
     @Builder(builderMethodName = "configBuilder")
     public RevolverHttpApiConfig(final String api, final HystrixCommandConfig runtime, final String path,
-                                 @Singular final Set<RequestMethod> methods, final Set<Integer> acceptableResponseCodes, final boolean sharedPool) {
+                                 @Singular final Set<RequestMethod> methods, final Set<Integer> acceptableResponseCodes, final boolean sharedPool,
+                                 final boolean streaming) {
         super(api, sharedPool, runtime);
         this.path = path;
+        this.streaming = streaming;
         this.methods = methods;
         this.acceptableResponseCodes = acceptableResponseCodes;
     }
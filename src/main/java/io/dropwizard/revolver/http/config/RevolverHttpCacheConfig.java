@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Gateway side response cache for an api. Only GETs with a cacheable upstream response (Cache-Control max-age/s-maxage
+ * or an ETag) are stored; sizes are in bytes and an off heap size of 0 disables the off heap tier.
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RevolverHttpCacheConfig {
+
+    private boolean enabled;
+
+    @Min(0)
+    @Builder.Default
+    private long heapSize = 16 * 1024 * 1024;
+
+    @Min(0)
+    private long offHeapSize;
+
+    @Min(0)
+    @Builder.Default
+    private int maxEntrySize = 1024 * 1024;
+
+    /**
+     * Seconds an expired entry may still be served while it is refreshed, when the upstream does not send
+     * stale-while-revalidate itself
+     */
+    @Min(0)
+    private int staleWhileRevalidate;
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+/**
+ * Hedging of idempotent calls to discovered (ranger) services: when the primary call has not answered within the
+ * given percentile of the api's recent latency, a second call goes to another healthy node and the first answer wins
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RevolverHttpHedgeConfig {
+
+    private boolean enabled;
+
+    @DecimalMin("50.0")
+    @DecimalMax("99.9")
+    @Builder.Default
+    private double percentile = 95.0;
+
+    /**
+     * Maximum hedged calls as a percentage of the api's calls
+     */
+    @Min(0)
+    @Max(100)
+    @Builder.Default
+    private int budget = 5;
+
+    /**
+     * Floor for the hedge delay in milliseconds
+     */
+    @Min(0)
+    @Builder.Default
+    private int minDelay = 5;
+}
@@ -50,12 +50,15 @@ public class RevolverHttpServiceConfig extends RevolverServiceConfig {
     private boolean trackingHeaders;
     private boolean compression;
     private int connectionKeepAliveInMillis = 30000;
+    private boolean nonBlocking;
+    private HttpProtocol protocol;
 
     @Builder
     public RevolverHttpServiceConfig(final String type, final String service, final EndpointSpec enpoint, final int connectionPoolSize,
                                      final boolean authEnabled, final boolean secured, final AuthConfig auth, final String keyStorePath,
                                      final String keystorePassword, @Singular("api") final Set<RevolverHttpApiConfig> apis, final boolean trackingHeaders,
-                                     final boolean compression, final int connectionKeepAliveInMillis) {
+                                     final boolean compression, final int connectionKeepAliveInMillis, final boolean nonBlocking,
+                                     final HttpProtocol protocol) {
         super(type, service);
         this.endpoint = enpoint;
         this.connectionPoolSize = connectionPoolSize;
@@ -68,5 +71,17 @@ public class RevolverHttpServiceConfig extends RevolverServiceConfig {
         this.trackingHeaders = trackingHeaders;
         this.compression = compression;
         this.connectionKeepAliveInMillis = connectionKeepAliveInMillis;
+        this.nonBlocking = nonBlocking;
+        this.protocol = protocol;
+    }
+
+    /**
+     * Protocol used towards the service; HTTP_2 is negotiated over tls (falls back to HTTP/1.1), H2C is http/2 over
+     * plain text with prior knowledge and needs an upstream that speaks it. Unset keeps the client defaults.
+     */
+    public enum HttpProtocol {
+        HTTP_1_1,
+        HTTP_2,
+        H2C
     }
 }
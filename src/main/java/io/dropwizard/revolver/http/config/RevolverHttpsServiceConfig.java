@@ -48,12 +48,15 @@ public class RevolverHttpsServiceConfig extends RevolverServiceConfig {
     private boolean trackingHeaders;
     private boolean compression;
     private int connectionKeepAliveInMillis = 60000;
+    private boolean nonBlocking;
+    private RevolverHttpServiceConfig.HttpProtocol protocol;
 
     @Builder
     public RevolverHttpsServiceConfig(final String type, final String service, final EndpointSpec enpoint, final int connectionPoolSize,
                                       final boolean authEnabled, final AuthConfig auth, final String keyStorePath,
                                       final String keystorePassword, @Singular("api") final Set<RevolverHttpApiConfig> apis, final boolean trackingHeaders,
-                                      final boolean compression, final int connectionKeepAliveInMillis) {
+                                      final boolean compression, final int connectionKeepAliveInMillis, final boolean nonBlocking,
+                                      final RevolverHttpServiceConfig.HttpProtocol protocol) {
         super(type, service);
         this.endpoint = enpoint;
         this.connectionPoolSize = connectionPoolSize;
@@ -65,5 +68,7 @@ public class RevolverHttpsServiceConfig extends RevolverServiceConfig {
         this.trackingHeaders = trackingHeaders;
         this.compression = compression;
         this.connectionKeepAliveInMillis = connectionKeepAliveInMillis;
+        this.nonBlocking = nonBlocking;
+        this.protocol = protocol;
     }
 }
\ No newline at end of file
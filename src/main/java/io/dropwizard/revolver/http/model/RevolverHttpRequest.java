@@ -27,6 +27,7 @@ import lombok.EqualsAndHashCode;
 
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
+import java.io.InputStream;
 import java.util.Map;
 
 /**
@@ -43,6 +44,11 @@ public class RevolverHttpRequest extends RevolverRequest
     private RevolverHttpApiConfig.RequestMethod method;
     private byte[] body;
 
+    /**
+     * Request body for streaming apis; piped to the upstream instead of being buffered in {@link #body}
+     */
+    private InputStream bodyStream;
+
     public RevolverHttpRequest() {
         this.headers = new MultivaluedHashMap<>();
         this.queryParams = new MultivaluedHashMap<>();
@@ -52,7 +58,7 @@ public class RevolverHttpRequest extends RevolverRequest
     }
 
     @Builder
-    public RevolverHttpRequest(final String service, final String api, final RevolverHttpApiConfig.RequestMethod method, final TraceInfo traceInfo, final MultivaluedMap<String, String> headers, final MultivaluedMap<String, String> queryParams, final Map<String, String> pathParams, final String path, final byte[] body) {
+    public RevolverHttpRequest(final String service, final String api, final RevolverHttpApiConfig.RequestMethod method, final TraceInfo traceInfo, final MultivaluedMap<String, String> headers, final MultivaluedMap<String, String> queryParams, final Map<String, String> pathParams, final String path, final byte[] body, final InputStream bodyStream) {
         super("http", service, api, traceInfo);
         this.headers = new MultivaluedHashMap<>();
         this.queryParams = new MultivaluedHashMap<>();
@@ -61,6 +67,7 @@ public class RevolverHttpRequest extends RevolverRequest
         this.queryParams = queryParams;
         this.pathParams = pathParams;
         this.body = body;
+        this.bodyStream = bodyStream;
         this.path = path;
         this.method = method;
     }
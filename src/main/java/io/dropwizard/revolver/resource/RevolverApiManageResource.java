@@ -49,12 +49,12 @@ public class RevolverApiManageResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response getStatus(@PathParam("service") final String service, @PathParam("api") final String api) {
         String key = service +"." +api;
-        if(RevolverBundle.apiStatus.containsKey(key)) {
+        if(RevolverBundle.getApiStatus().containsKey(key)) {
             return Response.ok(
                     ImmutableMap.<String, Object>builder()
                             .put("service", service)
                             .put("api", api)
-                            .put("status", RevolverBundle.apiStatus.get(service +"." +api))
+                            .put("status", RevolverBundle.getApiStatus(key))
                             .build()
             ).build();
         } else {
@@ -75,13 +75,12 @@ public class RevolverApiManageResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response enable(@PathParam("service") final String service, @PathParam("api") final String api) {
         String key = service +"." +api;
-        if(RevolverBundle.apiStatus.containsKey(key)) {
-            RevolverBundle.apiStatus.put(key, true);
+        if(RevolverBundle.setApiStatus(key, true)) {
             return Response.ok(
                     ImmutableMap.<String, Object>builder()
                             .put("service", service)
                             .put("api", api)
-                            .put("status", RevolverBundle.apiStatus.get(service +"." +api))
+                            .put("status", RevolverBundle.getApiStatus(key))
                             .build()
             ).build();
         } else {
@@ -102,13 +101,12 @@ public class RevolverApiManageResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response disable(@PathParam("service") final String service, @PathParam("api") final String api) {
         String key = service +"." +api;
-        if(RevolverBundle.apiStatus.containsKey(key)) {
-            RevolverBundle.apiStatus.put(key, false);
+        if(RevolverBundle.setApiStatus(key, false)) {
             return Response.ok(
                     ImmutableMap.<String, Object>builder()
                             .put("service", service)
                             .put("api", api)
-                            .put("status", RevolverBundle.apiStatus.get(service +"." +api))
+                            .put("status", RevolverBundle.getApiStatus(key))
                             .build()
             ).build();
         } else {
@@ -128,7 +126,7 @@ public class RevolverApiManageResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response status() {
         return Response.ok(
-                RevolverBundle.apiStatus.entrySet().stream()
+                RevolverBundle.getApiStatus().entrySet().stream()
                     .map( e -> {
                         String key[] = e.getKey().split("\\.");
                         return ImmutableMap.<String, Object>builder()
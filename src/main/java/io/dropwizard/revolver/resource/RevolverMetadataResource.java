@@ -27,8 +27,11 @@ import io.dropwizard.revolver.core.config.RevolverConfig;
 import io.dropwizard.revolver.core.config.RevolverServiceConfig;
 import io.dropwizard.revolver.core.model.RevolverApiMetadata;
 import io.dropwizard.revolver.core.model.RevolverMetadataResponse;
+import io.dropwizard.revolver.core.model.RevolverNodeMetadata;
 import io.dropwizard.revolver.core.model.RevolverServiceMetadata;
+import io.dropwizard.revolver.discovery.NodeSelector;
 import io.dropwizard.revolver.discovery.RevolverServiceResolver;
+import io.dropwizard.revolver.discovery.model.Endpoint;
 import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
 import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
 import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
@@ -95,14 +98,18 @@ public class RevolverMetadataResource {
     @Metered
     @ApiOperation(value = "Get the status & metadata of a service registered in api")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<ServiceNode<RevolverServiceResolver.ShardInfo>> serviceStatus(@PathParam("service") String service) {
+    public List<RevolverNodeMetadata> serviceStatus(@PathParam("service") String service) {
         RevolverServiceResolver serviceResolver = RevolverBundle.getServiceNameResolver();
         RevolverServiceResolver.ShardedServiceDiscoveryInfo serviceInfo = serviceResolver.getServiceFinders().getOrDefault(service, null);
         if(serviceInfo == null) {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
+        final NodeSelector selector = serviceResolver.selector(service);
         return serviceInfo.getShardFinder()
-                .getAll(new RevolverServiceResolver.ShardInfo(serviceInfo.getEnvironment()));
+                .getAll(new RevolverServiceResolver.ShardInfo(serviceInfo.getEnvironment()))
+                .stream()
+                .map(node -> nodeMetadata(node, selector))
+                .collect(Collectors.toList());
     }
 
 
@@ -151,6 +158,25 @@ public class RevolverMetadataResource {
                 .build()).sorted(Comparator.comparing(RevolverApiMetadata::getPath)).collect(Collectors.toList());
     }
 
+    private RevolverNodeMetadata nodeMetadata(ServiceNode<RevolverServiceResolver.ShardInfo> node, NodeSelector selector) {
+        RevolverNodeMetadata.RevolverNodeMetadataBuilder nodeMetadata = RevolverNodeMetadata.builder()
+                .host(node.getHost())
+                .port(node.getPort())
+                .nodeData(node.getNodeData())
+                .healthcheckStatus(node.getHealthcheckStatus())
+                .lastUpdatedTimeStamp(node.getLastUpdatedTimeStamp());
+        if(selector != null) {
+            NodeSelector.NodeState state = selector.state(Endpoint.builder().host(node.getHost()).port(node.getPort()).build());
+            nodeMetadata.latency(state.getLatency())
+                    .inflight(state.getInflight())
+                    .consecutiveFailures(state.getConsecutiveFailures())
+                    .ejected(state.isEjected())
+                    .ejectedUntil(state.getEjectedUntil())
+                    .ejections(state.getEjections());
+        }
+        return nodeMetadata.build();
+    }
+
     private void instanceStats(RangerEndpointSpec endpoint, RevolverServiceMetadata.RevolverServiceMetadataBuilder serviceMetadataBuilder) {
         RevolverServiceResolver serviceResolver = RevolverBundle.getServiceNameResolver();
         if(serviceResolver == null) {
@@ -18,10 +18,10 @@
 package io.dropwizard.revolver.resource;
 
 import com.codahale.metrics.annotation.Metered;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 import io.dropwizard.jersey.PATCH;
 import io.dropwizard.msgpack.MsgPackMediaType;
 import io.dropwizard.revolver.RevolverBundle;
@@ -30,10 +30,12 @@ import io.dropwizard.revolver.base.core.RevolverCallbackRequest;
 import io.dropwizard.revolver.base.core.RevolverCallbackResponse;
 import io.dropwizard.revolver.base.core.RevolverRequestState;
 import io.dropwizard.revolver.callback.CallbackHandler;
+import io.dropwizard.revolver.core.limiter.LoadShedder;
 import io.dropwizard.revolver.core.tracing.TraceInfo;
 import io.dropwizard.revolver.http.RevolverHttpCommand;
 import io.dropwizard.revolver.http.RevolversHttpHeaders;
 import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.ApiPathMatch;
 import io.dropwizard.revolver.http.model.RevolverHttpRequest;
 import io.dropwizard.revolver.http.model.RevolverHttpResponse;
 import io.dropwizard.revolver.persistence.PersistenceProvider;
@@ -42,17 +44,28 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.inject.Singleton;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author phaneesh
@@ -73,131 +86,194 @@ public class RevolverRequestResource {
 
     private final CallbackHandler callbackHandler;
 
+    private final Executor asyncExecutor;
+
+    private final LoadShedder loadShedder;
+
     private static final Map<String, String> BAD_REQUEST_RESPONSE = Collections.singletonMap("message", "Bad Request");
 
     private static Map<String, String> SERVICE_UNAVAILABLE_RESPONSE = Collections.singletonMap("message", "Service Unavailable");
 
+    private static Map<String, String> OVERLOADED_RESPONSE = Collections.singletonMap("message", "Service Overloaded");
+
     private static final Map<String, String> DUPLICATE_REQUEST_RESPONSE = Collections.singletonMap("message", "Duplicate");
 
     public RevolverRequestResource(final ObjectMapper jsonObjectMapper,
                                    final ObjectMapper msgPackObjectMapper,
                                    final XmlMapper xmlObjectMapper,
-                                   final PersistenceProvider persistenceProvider, final CallbackHandler callbackHandler) {
+                                   final PersistenceProvider persistenceProvider, final CallbackHandler callbackHandler,
+                                   final Executor asyncExecutor, final LoadShedder loadShedder) {
         this.jsonObjectMapper = jsonObjectMapper;
         this.msgPackObjectMapper = msgPackObjectMapper;
         this.xmlObjectMapper = xmlObjectMapper;
         this.persistenceProvider = persistenceProvider;
         this.callbackHandler = callbackHandler;
+        this.asyncExecutor = asyncExecutor;
+        this.loadShedder = loadShedder;
     }
 
     @GET
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver GET api endpoint")
-    public Response get(@PathParam("service") final String service,
-                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.GET, path, headers, uriInfo, null);
+    public void get(@PathParam("service") final String service,
+                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo,
+                        @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.GET, path, headers, uriInfo, null, asyncResponse);
     }
 
     @HEAD
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver HEAD api endpoint")
-    public Response head(@PathParam("service") final String service,
-                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.HEAD, path, headers, uriInfo, null);
+    public void head(@PathParam("service") final String service,
+                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo,
+                        @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.HEAD, path, headers, uriInfo, null, asyncResponse);
     }
 
     @POST
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver POST api endpoint")
-    public Response post(@PathParam("service") final String service,
-                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final byte[] body) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.POST, path, headers, uriInfo, body);
+    public void post(@PathParam("service") final String service,
+                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final InputStream body,
+                        @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.POST, path, headers, uriInfo, body, asyncResponse);
     }
 
     @PUT
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver PUT api endpoint")
-    public Response put(@PathParam("service") final String service,
-                         @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final byte[] body) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.PUT, path, headers, uriInfo, body);
+    public void put(@PathParam("service") final String service,
+                         @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final InputStream body,
+                         @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.PUT, path, headers, uriInfo, body, asyncResponse);
     }
 
     @DELETE
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver DELETE api endpoint")
-    public Response delete(@PathParam("service") final String service,
-                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.DELETE, path, headers, uriInfo, null);
+    public void delete(@PathParam("service") final String service,
+                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo,
+                        @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.DELETE, path, headers, uriInfo, null, asyncResponse);
     }
 
     @PATCH
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver PATCH api endpoint")
-    public Response patch(@PathParam("service") final String service,
-                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final byte[] body) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.PATCH, path, headers, uriInfo, body);
+    public void patch(@PathParam("service") final String service,
+                        @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final InputStream body,
+                        @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.PATCH, path, headers, uriInfo, body, asyncResponse);
     }
 
     @OPTIONS
     @Path(value="/{service}/{path: .*}")
     @Metered
     @ApiOperation(value = "Revolver OPTIONS api endpoint")
-    public Response options(@PathParam("service") final String service,
-                          @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final byte[] body) throws Exception {
-        return processRequest(service, RevolverHttpApiConfig.RequestMethod.OPTIONS, path, headers, uriInfo, body);
+    public void options(@PathParam("service") final String service,
+                          @PathParam("path") final String path, @Context final HttpHeaders headers, @Context final UriInfo uriInfo, final InputStream body,
+                          @Suspended final AsyncResponse asyncResponse) {
+        processRequest(service, RevolverHttpApiConfig.RequestMethod.OPTIONS, path, headers, uriInfo, body, asyncResponse);
     }
 
 
-    private Response processRequest(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path,
-                                    final HttpHeaders headers, final UriInfo uriInfo, final byte[] body) throws Exception {
-        val apiMap = RevolverBundle.matchPath(service, path);
-        if(apiMap == null) {
-            return Response.status(Response.Status.BAD_REQUEST).entity(
-                    ResponseTransformationUtil.transform(BAD_REQUEST_RESPONSE,
-                            headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
-                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)
-            ).build();
+    private void processRequest(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path,
+                                final HttpHeaders headers, final UriInfo uriInfo, final InputStream body, final AsyncResponse asyncResponse) {
+        try {
+            routeRequest(service, method, path, headers, uriInfo, body).whenComplete((response, error) -> {
+                if (error == null) {
+                    //Client went away (or the request timed out) before the response could be sent: let go of the upstream
+                    if (!asyncResponse.resume(response) && response.getEntity() instanceof UpstreamBody) {
+                        ((UpstreamBody) response.getEntity()).close();
+                    }
+                } else {
+                    asyncResponse.resume(unwrap(error));
+                }
+            });
+        } catch (Exception e) {
+            asyncResponse.resume(unwrap(e));
         }
+    }
+
+    private CompletableFuture<Response> routeRequest(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path,
+                                                     final HttpHeaders headers, final UriInfo uriInfo, final InputStream body) throws Exception {
+        val routes = RevolverBundle.getRouteTable();
+        val apiMatch = routes.match(service, method, path);
+        if(apiMatch == null) {
+            return CompletableFuture.completedFuture(badRequest(headers));
+        }
+        val apiMap = apiMatch.getApiPathMap();
         String serviceKey = service +"." +apiMap.getApi().getApi();
-        if(RevolverBundle.apiStatus.containsKey(serviceKey) && !RevolverBundle.apiStatus.get(serviceKey)) {
-            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(
+        if(Boolean.FALSE.equals(routes.getApiStatus().get(serviceKey))) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(
                     ResponseTransformationUtil.transform(SERVICE_UNAVAILABLE_RESPONSE,
                             headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
                             jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)
-            ).build();
+            ).build());
+        }
+        //Under overload lower priority traffic is turned away here, before any command runs for it
+        if(loadShedder == null) {
+            return dispatch(service, method, path, headers, uriInfo, body, apiMatch);
+        }
+        if(!loadShedder.tryAcquire(loadShedder.priority(apiMap.getApi().getPriority(), headers.getHeaderString(RevolversHttpHeaders.PRIORITY_HEADER)))) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(
+                    ResponseTransformationUtil.transform(OVERLOADED_RESPONSE,
+                            headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
+                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)
+            ).build());
         }
+        try {
+            return dispatch(service, method, path, headers, uriInfo, body, apiMatch).whenComplete((response, error) -> {
+                //A streamed body is yet to be written out to the client; the request holds its permit until it has been
+                if (error == null && response != null && response.getEntity() instanceof UpstreamBody) {
+                    ((UpstreamBody) response.getEntity()).whenClosed(loadShedder::release);
+                } else {
+                    loadShedder.release();
+                }
+            });
+        } catch (Exception e) {
+            loadShedder.release();
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Response> dispatch(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path,
+                                                 final HttpHeaders headers, final UriInfo uriInfo, final InputStream body,
+                                                 final ApiPathMatch apiMatch) throws Exception {
+        val apiMap = apiMatch.getApiPathMap();
         val callMode = headers.getRequestHeaders().getFirst(RevolversHttpHeaders.CALL_MODE_HEADER);
         if(Strings.isNullOrEmpty(callMode)) {
-          return executeInline(service, apiMap.getApi(), method, path, headers, uriInfo, body);
+            //Streaming apis pipe the request body straight through to the upstream
+            if(apiMap.getApi().isStreaming()) {
+                return executeInline(service, apiMap.getApi(), method, path, apiMatch.getPathParams(), headers, uriInfo, null, body);
+            }
+            return executeInline(service, apiMap.getApi(), method, path, apiMatch.getPathParams(), headers, uriInfo, readBody(body), null);
         }
+        final byte[] payload = readBody(body);
         switch (callMode.toUpperCase()) {
             case RevolverHttpCommand.CALL_MODE_POLLING:
-                return executeCommandAsync(service, apiMap.getApi(), method, path, headers, uriInfo, body, apiMap.getApi().isAsync(), callMode);
+                return executeCommandAsync(service, apiMap.getApi(), method, path, apiMatch.getPathParams(), headers, uriInfo, payload, apiMap.getApi().isAsync(), callMode);
             case RevolverHttpCommand.CALL_MODE_CALLBACK:
                 if(Strings.isNullOrEmpty(headers.getHeaderString(RevolversHttpHeaders.CALLBACK_URI_HEADER))) {
-                    return Response.status(Response.Status.BAD_REQUEST).entity(
-                            ResponseTransformationUtil.transform(BAD_REQUEST_RESPONSE,
-                                    headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
-                                    jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)
-                    ).build();
+                    return CompletableFuture.completedFuture(badRequest(headers));
                 }
-                return executeCommandAsync(service, apiMap.getApi(), method, path, headers, uriInfo, body, apiMap.getApi().isAsync(), callMode);
+                return executeCommandAsync(service, apiMap.getApi(), method, path, apiMatch.getPathParams(), headers, uriInfo, payload, apiMap.getApi().isAsync(), callMode);
             case RevolverHttpCommand.CALL_MODE_CALLBACK_SYNC:
                 if(Strings.isNullOrEmpty(headers.getHeaderString(RevolversHttpHeaders.CALLBACK_URI_HEADER))) {
-                    return Response.status(Response.Status.BAD_REQUEST).entity(
-                            ResponseTransformationUtil.transform(BAD_REQUEST_RESPONSE,
-                                    headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
-                                    jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)
-                    ).build();
+                    return CompletableFuture.completedFuture(badRequest(headers));
                 }
-                return executeCallbackSync(service, apiMap.getApi(), method, path, headers, uriInfo, body);
+                return executeCallbackSync(service, apiMap.getApi(), method, path, apiMatch.getPathParams(), headers, uriInfo, payload);
         }
+        return CompletableFuture.completedFuture(badRequest(headers));
+    }
+
+    private Response badRequest(final HttpHeaders headers) throws IOException {
         return Response.status(Response.Status.BAD_REQUEST).entity(
                 ResponseTransformationUtil.transform(BAD_REQUEST_RESPONSE,
                         headers.getMediaType() != null ? headers.getMediaType().toString() : MediaType.APPLICATION_JSON,
@@ -205,14 +281,50 @@ public class RevolverRequestResource {
         ).build();
     }
 
-    private Response executeInline(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
-                                   final String path, final HttpHeaders headers,
-                                   final UriInfo uriInfo, final byte[] body) throws IOException, TimeoutException {
+    private static byte[] readBody(final InputStream body) throws IOException {
+        if(body == null) {
+            return null;
+        }
+        try (InputStream stream = body) {
+            return ByteStreams.toByteArray(stream);
+        }
+    }
+
+    /**
+     * Reads a streamed upstream body into memory; used where the full payload is needed (persistence, transcoding)
+     */
+    private static void bufferBody(final RevolverHttpResponse response) throws IOException {
+        if(response.getBodyStream() == null) {
+            return;
+        }
+        try (InputStream stream = response.getBodyStream()) {
+            response.setBody(ByteStreams.toByteArray(stream));
+        } finally {
+            response.setBodyStream(null);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        //Timeouts keep mapping to 504 like they did when commands were executed inline
+        final Throwable rootCause = ExceptionUtils.getRootCause(cause);
+        if (rootCause instanceof TimeoutException) {
+            return rootCause;
+        }
+        return cause;
+    }
+
+    private CompletableFuture<Response> executeInline(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
+                                   final String path, final Map<String, String> pathParams, final HttpHeaders headers,
+                                   final UriInfo uriInfo, final byte[] body, final InputStream bodyStream) {
         val sanatizedHeaders = new MultivaluedHashMap<String, String>();
         headers.getRequestHeaders().forEach(sanatizedHeaders::put);
         cleanHeaders(sanatizedHeaders, api);
         val httpCommand = RevolverBundle.getHttpCommand(service);
-        val response = httpCommand.execute(
+        val response = httpCommand.executeAsync(
                 RevolverHttpRequest.builder()
                         .traceInfo(
                                 TraceInfo.builder()
@@ -223,13 +335,21 @@ public class RevolverRequestResource {
                         .api(api.getApi())
                         .service(service)
                         .path(path)
+                        .pathParams(pathParams)
                         .method(method)
                         .headers(sanatizedHeaders)
                         .queryParams(uriInfo.getQueryParameters())
                         .body(body)
+                        .bodyStream(bodyStream)
                         .build()
         );
-        return transform(headers, response, api.getApi(), path, method);
+        return response.thenApply(result -> {
+            try {
+                return transform(headers, result, api.getApi(), path, method);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
      }
 
     private Response transform(HttpHeaders headers, RevolverHttpResponse response, String api, String path, RevolverHttpApiConfig.RequestMethod method) throws IOException {
@@ -250,53 +370,107 @@ public class RevolverRequestResource {
         //Also send it as the content type as response content type if there requested content type is the same;
         if(Strings.isNullOrEmpty(requestMediaType) || requestMediaType.equals(responseMediaType)) {
             httpResponse.header(HttpHeaders.CONTENT_TYPE, responseMediaType);
-            httpResponse.entity(response.getBody());
-            return httpResponse.build();
-        }
-        Object responseData = null;
-        if(responseMediaType.startsWith(MediaType.APPLICATION_JSON)) {
-            final JsonNode jsonNode = jsonObjectMapper.readTree(response.getBody());
-            if(jsonNode.isArray()) {
-                responseData = jsonObjectMapper.convertValue(jsonNode, List.class);
-            } else {
-                responseData = jsonObjectMapper.convertValue(jsonNode, Map.class);
-            }
-        } else if(responseMediaType.startsWith(MediaType.APPLICATION_XML)) {
-            final JsonNode jsonNode = xmlObjectMapper.readTree(response.getBody());
-            if(jsonNode.isArray()) {
-                responseData = xmlObjectMapper.convertValue(jsonNode, List.class);
-            } else {
-                responseData = xmlObjectMapper.convertValue(jsonNode, Map.class);
-            }
-        } else if(responseMediaType.startsWith(MsgPackMediaType.APPLICATION_MSGPACK)) {
-            final JsonNode jsonNode = msgPackObjectMapper.readTree(response.getBody());
-            if(jsonNode.isArray()) {
-                responseData = msgPackObjectMapper.convertValue(jsonNode, List.class);
+            if(response.getBodyStream() != null) {
+                httpResponse.entity(new UpstreamBody(response.getBodyStream(), ByteStreams::copy));
             } else {
-                responseData = msgPackObjectMapper.convertValue(jsonNode, Map.class);
+                httpResponse.entity(response.getBody());
             }
+            return httpResponse.build();
         }
-        if(responseData == null) {
+        final ObjectMapper sourceMapper = mapperFor(responseMediaType);
+        if(sourceMapper == null || (response.getBody() == null && response.getBodyStream() == null)) {
+            bufferBody(response);
             httpResponse.entity(response.getBody());
+            return httpResponse.build();
+        }
+        final ObjectMapper targetMapper;
+        if(requestMediaType.startsWith(MediaType.APPLICATION_XML)) {
+            httpResponse.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML);
+            targetMapper = xmlObjectMapper;
+        } else if(requestMediaType.startsWith(MsgPackMediaType.APPLICATION_MSGPACK)) {
+            httpResponse.header(HttpHeaders.CONTENT_TYPE, MsgPackMediaType.APPLICATION_MSGPACK);
+            targetMapper = msgPackObjectMapper;
         } else {
-            if(requestMediaType.startsWith(MediaType.APPLICATION_JSON)) {
-                httpResponse.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-                httpResponse.entity(jsonObjectMapper.writeValueAsBytes(responseData));
-            } else if(requestMediaType.startsWith(MediaType.APPLICATION_XML)) {
-                httpResponse.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML);
-                httpResponse.entity(xmlObjectMapper.writer()
-                        .withRootName("Response").writeValueAsBytes(responseData));
-            } else if(requestMediaType.startsWith(MsgPackMediaType.APPLICATION_MSGPACK)) {
-                httpResponse.header(HttpHeaders.CONTENT_TYPE, MsgPackMediaType.APPLICATION_MSGPACK);
-                httpResponse.entity(msgPackObjectMapper.writeValueAsBytes(responseData));
-            } else {
-                httpResponse.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-                httpResponse.entity(jsonObjectMapper.writeValueAsBytes(responseData));
-            }
+            httpResponse.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            targetMapper = jsonObjectMapper;
         }
+        if(response.getBodyStream() == null) {
+            //Transcode before the status is committed so that a malformed body still maps to an error response
+            final ByteArrayOutputStream transcoded = new ByteArrayOutputStream(response.getBody().length);
+            ResponseTransformationUtil.transcode(new ByteArrayInputStream(response.getBody()), sourceMapper, targetMapper, transcoded);
+            httpResponse.entity(transcoded.toByteArray());
+            return httpResponse.build();
+        }
+        //Streaming apis are transcoded as they are written out; a body that breaks midway can only end the response early
+        httpResponse.entity(new UpstreamBody(response.getBodyStream(), (stream, output) -> ResponseTransformationUtil.transcode(stream, sourceMapper, targetMapper, output)));
         return httpResponse.build();
     }
 
+    /**
+     * Upstream body written out to the client; closing it (written or not) releases the upstream response
+     */
+    private static class UpstreamBody implements StreamingOutput, Closeable {
+
+        private final InputStream body;
+
+        private final BodyWriter writer;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private volatile Runnable onClose = () -> {};
+
+        private UpstreamBody(final InputStream body, final BodyWriter writer) {
+            this.body = body;
+            this.writer = writer;
+        }
+
+        /**
+         * Runs the given action once the body has been written out or let go of; set before the body is handed on
+         */
+        private void whenClosed(final Runnable action) {
+            onClose = action;
+        }
+
+        @Override
+        public void write(final OutputStream output) throws IOException {
+            try {
+                writer.write(body, output);
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                body.close();
+            } catch (IOException e) {
+                log.warn("Error closing upstream body: {}", e.getMessage());
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+        void write(InputStream body, OutputStream output) throws IOException;
+    }
+
+
+    private ObjectMapper mapperFor(final String mediaType) {
+        if(mediaType.startsWith(MediaType.APPLICATION_JSON)) {
+            return jsonObjectMapper;
+        } else if(mediaType.startsWith(MediaType.APPLICATION_XML)) {
+            return xmlObjectMapper;
+        } else if(mediaType.startsWith(MsgPackMediaType.APPLICATION_MSGPACK)) {
+            return msgPackObjectMapper;
+        }
+        return null;
+    }
 
     private void cleanHeaders(final MultivaluedMap<String, String> headers, RevolverHttpApiConfig apiConfig) {
         headers.remove(HttpHeaders.HOST);
@@ -306,8 +480,8 @@ public class RevolverRequestResource {
         headers.putSingle(HttpHeaders.ACCEPT_ENCODING, apiConfig.getAcceptEncoding());
     }
 
-    private Response executeCommandAsync(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
-                                         final String path, final HttpHeaders headers,
+    private CompletableFuture<Response> executeCommandAsync(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
+                                         final String path, final Map<String, String> pathParams, final HttpHeaders headers,
                                          final UriInfo uriInfo, final byte[] body, final boolean isDownstreamAsync, final String callMode) throws Exception {
         val sanatizedHeaders = new MultivaluedHashMap<String, String>();
         headers.getRequestHeaders().forEach(sanatizedHeaders::put);
@@ -320,10 +494,10 @@ public class RevolverRequestResource {
                 Integer.parseInt(headers.getHeaderString(RevolversHttpHeaders.MAILBOX_TTL_HEADER)) : -1;
         //Short circuit if it is a duplicate request
         if(persistenceProvider.exists(requestId)) {
-            return Response.status(Response.Status.NOT_ACCEPTABLE)
+            return CompletableFuture.completedFuture(Response.status(Response.Status.NOT_ACCEPTABLE)
                     .entity(ResponseTransformationUtil.transform(DUPLICATE_REQUEST_RESPONSE,
                             headers.getMediaType() == null ? MediaType.APPLICATION_JSON : headers.getMediaType().toString(),
-                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build();
+                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build());
         }
         persistenceProvider.saveRequest(requestId, mailBoxId,
                 RevolverCallbackRequest.builder()
@@ -349,6 +523,7 @@ public class RevolverRequestResource {
                         .api(api.getApi())
                         .service(service)
                         .path(path)
+                        .pathParams(pathParams)
                         .method(method)
                         .headers(sanatizedHeaders)
                         .queryParams(uriInfo.getQueryParameters())
@@ -357,17 +532,24 @@ public class RevolverRequestResource {
         );
         //Async Downstream send accept on request path (Still circuit breaker will kick in. Keep circuit breaker aggressive)
         if(isDownstreamAsync) {
-            val result = response.get();
-            if(result.getStatusCode() == Response.Status.ACCEPTED.getStatusCode()) {
-                persistenceProvider.setRequestState(requestId, RevolverRequestState.REQUESTED, mailBoxTtl);
-            } else {
-                persistenceProvider.setRequestState(requestId, RevolverRequestState.RESPONDED, mailBoxTtl);
-                saveResponse(requestId, result, callMode, mailBoxTtl);
-            }
-            return transform(headers, result, api.getApi(), path, method);
+            return response.thenApply(result -> {
+                try {
+                    bufferBody(result);
+                    if(result.getStatusCode() == Response.Status.ACCEPTED.getStatusCode()) {
+                        persistenceProvider.setRequestState(requestId, RevolverRequestState.REQUESTED, mailBoxTtl);
+                    } else {
+                        persistenceProvider.setRequestState(requestId, RevolverRequestState.RESPONDED, mailBoxTtl);
+                        saveResponse(requestId, result, callMode, mailBoxTtl);
+                    }
+                    return transform(headers, result, api.getApi(), path, method);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
         } else {
             response.thenAcceptAsync( result -> {
                 try {
+                    bufferBody(result);
                     if(result.getStatusCode() == Response.Status.ACCEPTED.getStatusCode()) {
                         persistenceProvider.setRequestState(requestId, RevolverRequestState.REQUESTED, mailBoxTtl);
                     } else if(result.getStatusCode() == Response.Status.OK.getStatusCode()) {
@@ -380,16 +562,16 @@ public class RevolverRequestResource {
                 } catch (Exception e) {
                     log.error("Error setting request state for request id: {}", requestId, e);
                 }
-            });
+            }, asyncExecutor);
             RevolverAckMessage revolverAckMessage = RevolverAckMessage.builder().requestId(requestId).acceptedAt(Instant.now().toEpochMilli()).build();
-            return Response.accepted().entity(ResponseTransformationUtil.transform(revolverAckMessage,
+            return CompletableFuture.completedFuture(Response.accepted().entity(ResponseTransformationUtil.transform(revolverAckMessage,
                     headers.getMediaType() == null ? MediaType.APPLICATION_JSON : headers.getMediaType().toString(),
-                    jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build();
+                    jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build());
         }
     }
 
-    private Response executeCallbackSync(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
-                                     final String path, final HttpHeaders headers,
+    private CompletableFuture<Response> executeCallbackSync(final String service, final RevolverHttpApiConfig api, final RevolverHttpApiConfig.RequestMethod method,
+                                     final String path, final Map<String, String> pathParams, final HttpHeaders headers,
                                      final UriInfo uriInfo, final byte[] body) throws Exception {
         val sanatizedHeaders = new MultivaluedHashMap<String, String>();
         headers.getRequestHeaders().forEach(sanatizedHeaders::put);
@@ -402,10 +584,10 @@ public class RevolverRequestResource {
                 Integer.parseInt(headers.getHeaderString(RevolversHttpHeaders.MAILBOX_TTL_HEADER)) : -1;
         //Short circuit if it is a duplicate request
         if(persistenceProvider.exists(requestId)) {
-            return Response.status(Response.Status.NOT_ACCEPTABLE)
+            return CompletableFuture.completedFuture(Response.status(Response.Status.NOT_ACCEPTABLE)
                     .entity(ResponseTransformationUtil.transform(DUPLICATE_REQUEST_RESPONSE,
                             headers.getMediaType() == null ? MediaType.APPLICATION_JSON : headers.getMediaType().toString(),
-                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build();
+                            jsonObjectMapper, xmlObjectMapper, msgPackObjectMapper)).build());
         }
         persistenceProvider.saveRequest(requestId, mailBoxId,
                 RevolverCallbackRequest.builder()
@@ -431,15 +613,22 @@ public class RevolverRequestResource {
                         .api(api.getApi())
                         .service(service)
                         .path(path)
+                        .pathParams(pathParams)
                         .method(method)
                         .headers(sanatizedHeaders)
                         .queryParams(uriInfo.getQueryParameters())
                         .body(body)
                         .build()
         );
-        val result = response.get();
-        persistenceProvider.setRequestState(requestId, RevolverRequestState.REQUESTED, mailBoxTtl);
-        return transform(headers, result, api.getApi(), path, method);
+        return response.thenApply(result -> {
+            try {
+                bufferBody(result);
+                persistenceProvider.setRequestState(requestId, RevolverRequestState.REQUESTED, mailBoxTtl);
+                return transform(headers, result, api.getApi(), path, method);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
     private void saveResponse(String requestId, RevolverHttpResponse result, final String callMode, final int ttl) {
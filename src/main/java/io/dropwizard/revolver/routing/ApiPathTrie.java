@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.routing;
+
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.ApiPathMap;
+import io.dropwizard.revolver.http.model.ApiPathMatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * Precompiled segment trie over the api path templates of a single service.
+ * Literal segments always win over templated segments ({param} or prefix{param}suffix); lookups walk
+ * one node per path segment and do not use regular expressions. Routes are indexed by request method as well, so
+ * apis can share a path template with different methods.
+ * @author phaneesh
+ */
+@Slf4j
+public class ApiPathTrie {
+
+    private final Node root = new Node();
+
+    public void add(final ApiPathMap apiPathMap) {
+        final List<String> segments = split(apiPathMap.getApi().getPath());
+        final Param[] params = new Param[segments.size()];
+        Node node = root;
+        for (int i = 0; i < segments.size(); i++) {
+            final String segment = segments.get(i);
+            final Param param = Param.parse(segment);
+            if (param == null) {
+                node = node.literals.computeIfAbsent(segment, s -> new Node());
+            } else {
+                params[i] = param;
+                node = node.template(param.prefix, param.suffix);
+            }
+        }
+        final Route route = new Route(apiPathMap, params);
+        for (RevolverHttpApiConfig.RequestMethod method : apiPathMap.getApi().getMethods()) {
+            final Route existing = node.routes.putIfAbsent(method, route);
+            if (existing != null) {
+                log.warn("Api {} is shadowed by api {} for [{}] path: {}", apiPathMap.getApi().getApi(),
+                        existing.apiPathMap.getApi().getApi(), method, apiPathMap.getPath());
+            }
+        }
+    }
+
+    public ApiPathMatch match(final String path) {
+        return match(path, null);
+    }
+
+    /**
+     * Matches the path for the given method; a null method matches an api with any method
+     */
+    public ApiPathMatch match(final String path, final RevolverHttpApiConfig.RequestMethod method) {
+        final List<String> segments = split(path);
+        final Route route = match(root, segments, 0, method);
+        if (route == null) {
+            return null;
+        }
+        return ApiPathMatch.builder()
+                .apiPathMap(route.apiPathMap)
+                .pathParams(route.extract(segments))
+                .build();
+    }
+
+    /**
+     * Fills the placeholders of a path template with the given values; unknown placeholders are left as is
+     */
+    public static String expand(final String template, final Map<String, String> values) {
+        return compile(template).expand(values);
+    }
+
+    /**
+     * Parses a path template once so that it can be expanded repeatedly without re-splitting it
+     */
+    public static PathTemplate compile(final String template) {
+        final List<String> segments = split(template);
+        final String[] literals = new String[segments.size()];
+        final Param[] params = new Param[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            literals[i] = segments.get(i);
+            params[i] = Param.parse(literals[i]);
+        }
+        return new PathTemplate(literals, params, template.length() + 16);
+    }
+
+    /**
+     * Strips leading and trailing slashes so that equivalent request paths share a route cache entry
+     */
+    public static String normalize(final String path) {
+        if (path == null) {
+            return "";
+        }
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    static List<String> split(final String path) {
+        if (path == null) {
+            return Collections.emptyList();
+        }
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (start == end) {
+            return Collections.emptyList();
+        }
+        final List<String> segments = new ArrayList<>();
+        int from = start;
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == '/') {
+                segments.add(path.substring(from, i));
+                from = i + 1;
+            }
+        }
+        segments.add(path.substring(from, end));
+        return segments;
+    }
+
+    private static Route match(final Node node, final List<String> segments, final int depth,
+                               final RevolverHttpApiConfig.RequestMethod method) {
+        if (depth == segments.size()) {
+            return node.route(method);
+        }
+        final String segment = segments.get(depth);
+        final Node literal = node.literals.get(segment);
+        if (literal != null) {
+            final Route route = match(literal, segments, depth + 1, method);
+            if (route != null) {
+                return route;
+            }
+        }
+        //Backtrack into templated branches; most specific (longest fixed prefix + suffix) first
+        for (int i = 0; i < node.templates.size(); i++) {
+            final TemplateEdge edge = node.templates.get(i);
+            if (edge.matches(segment)) {
+                final Route route = match(edge.node, segments, depth + 1, method);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static class PathTemplate {
+        private final String[] literals;
+        private final Param[] params;
+        private final int sizeHint;
+        private final boolean templated;
+
+        private PathTemplate(final String[] literals, final Param[] params, final int sizeHint) {
+            this.literals = literals;
+            this.params = params;
+            this.sizeHint = sizeHint;
+            this.templated = Arrays.stream(params).anyMatch(Objects::nonNull);
+        }
+
+        public boolean isTemplated() {
+            return templated;
+        }
+
+        public String expand(final Map<String, String> values) {
+            final StringBuilder path = new StringBuilder(sizeHint);
+            for (int i = 0; i < literals.length; i++) {
+                path.append('/');
+                final Param param = params[i];
+                final String value = param == null || values == null ? null : values.get(param.name);
+                if (value != null) {
+                    path.append(param.prefix).append(value).append(param.suffix);
+                } else {
+                    path.append(literals[i]);
+                }
+            }
+            return path.length() == 0 ? "/" : path.toString();
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<TemplateEdge> templates = new ArrayList<>();
+        private final EnumMap<RevolverHttpApiConfig.RequestMethod, Route> routes = new EnumMap<>(RevolverHttpApiConfig.RequestMethod.class);
+
+        private Route route(final RevolverHttpApiConfig.RequestMethod method) {
+            if (method != null) {
+                return routes.get(method);
+            }
+            return routes.isEmpty() ? null : routes.values().iterator().next();
+        }
+
+        private Node template(final String prefix, final String suffix) {
+            for (TemplateEdge edge : templates) {
+                if (edge.prefix.equals(prefix) && edge.suffix.equals(suffix)) {
+                    return edge.node;
+                }
+            }
+            final TemplateEdge edge = new TemplateEdge(prefix, suffix, new Node());
+            int position = 0;
+            while (position < templates.size() && templates.get(position).fixedLength() >= edge.fixedLength()) {
+                position++;
+            }
+            templates.add(position, edge);
+            return edge.node;
+        }
+    }
+
+    private static class TemplateEdge {
+        private final String prefix;
+        private final String suffix;
+        private final Node node;
+
+        private TemplateEdge(final String prefix, final String suffix, final Node node) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.node = node;
+        }
+
+        private int fixedLength() {
+            return prefix.length() + suffix.length();
+        }
+
+        private boolean matches(final String segment) {
+            return segment.length() > fixedLength() && segment.startsWith(prefix) && segment.endsWith(suffix);
+        }
+    }
+
+    private static class Param {
+        private final String name;
+        private final String prefix;
+        private final String suffix;
+
+        private Param(final String name, final String prefix, final String suffix) {
+            this.name = name;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        private static Param parse(final String segment) {
+            final int start = segment.indexOf('{');
+            final int end = segment.lastIndexOf('}');
+            if (start < 0 || end <= start + 1) {
+                return null;
+            }
+            return new Param(segment.substring(start + 1, end), segment.substring(0, start), segment.substring(end + 1));
+        }
+    }
+
+    private static class Route {
+        private final ApiPathMap apiPathMap;
+        private final Param[] params;
+        private final int paramCount;
+
+        private Route(final ApiPathMap apiPathMap, final Param[] params) {
+            this.apiPathMap = apiPathMap;
+            this.params = params;
+            this.paramCount = (int) Arrays.stream(params).filter(Objects::nonNull).count();
+        }
+
+        private Map<String, String> extract(final List<String> segments) {
+            if (paramCount == 0) {
+                return Collections.emptyMap();
+            }
+            final Map<String, String> values = new HashMap<>(paramCount * 2);
+            for (int i = 0; i < params.length; i++) {
+                final Param param = params[i];
+                if (param != null) {
+                    final String segment = segments.get(i);
+                    values.put(param.name, segment.substring(param.prefix.length(), segment.length() - param.suffix.length()));
+                }
+            }
+            return Collections.unmodifiableMap(values);
+        }
+    }
+}
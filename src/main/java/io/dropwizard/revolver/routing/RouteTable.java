@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.routing;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.revolver.http.RevolverHttpCommand;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.ApiPathMap;
+import io.dropwizard.revolver.http.model.ApiPathMatch;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of everything the request path needs for routing: commands, api path tries and api status.
+ * Tables are never modified once published; reloads and status changes build a new table and swap the reference.
+ * Each table carries its own bounded cache of resolved routes and known misses, so a rebuild drops the cache with it.
+ * @author phaneesh
+ */
+@Getter
+public class RouteTable {
+
+    public static final RouteTable EMPTY = new RouteTable(ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(),
+            null, null, null);
+
+    private final ImmutableMap<String, RevolverHttpCommand> commands;
+
+    private final ImmutableMap<String, ApiPathTrie> tries;
+
+    private final ImmutableMap<String, ImmutableList<ApiPathMap>> pathMaps;
+
+    private final ImmutableMap<String, Boolean> apiStatus;
+
+    private final Cache<RouteKey, Optional<ApiPathMatch>> routeCache;
+
+    private final Meter cacheHits;
+
+    private final Meter cacheMisses;
+
+    private RouteTable(final ImmutableMap<String, RevolverHttpCommand> commands, final ImmutableMap<String, ApiPathTrie> tries,
+                       final ImmutableMap<String, ImmutableList<ApiPathMap>> pathMaps, final ImmutableMap<String, Boolean> apiStatus,
+                       final Cache<RouteKey, Optional<ApiPathMatch>> routeCache, final Meter cacheHits, final Meter cacheMisses) {
+        this.commands = commands;
+        this.tries = tries;
+        this.pathMaps = pathMaps;
+        this.apiStatus = apiStatus;
+        this.routeCache = routeCache;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+    }
+
+    public ApiPathMatch match(final String service, final String path) {
+        final ApiPathTrie trie = tries.get(service);
+        if (trie == null) {
+            return null;
+        }
+        return trie.match(path);
+    }
+
+    public ApiPathMatch match(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path) {
+        if (routeCache == null) {
+            return lookup(service, method, path);
+        }
+        final RouteKey key = new RouteKey(service, method, ApiPathTrie.normalize(path));
+        final Optional<ApiPathMatch> cached = routeCache.getIfPresent(key);
+        if (cached != null) {
+            cacheHits.mark();
+            return cached.orElse(null);
+        }
+        cacheMisses.mark();
+        final ApiPathMatch match = lookup(service, method, path);
+        routeCache.put(key, Optional.ofNullable(match));
+        return match;
+    }
+
+    private ApiPathMatch lookup(final String service, final RevolverHttpApiConfig.RequestMethod method, final String path) {
+        final ApiPathTrie trie = tries.get(service);
+        if (trie == null) {
+            return null;
+        }
+        return trie.match(path, method);
+    }
+
+    public RevolverHttpCommand command(final String service) {
+        return commands.get(service);
+    }
+
+    public RouteTable withCommand(final String service, final RevolverHttpCommand command) {
+        final Map<String, RevolverHttpCommand> updated = new LinkedHashMap<>(commands);
+        updated.put(service, command);
+        return new RouteTable(ImmutableMap.copyOf(updated), tries, pathMaps, apiStatus, routeCache, cacheHits, cacheMisses);
+    }
+
+    public RouteTable withApiStatus(final String key, final boolean status) {
+        final Map<String, Boolean> updated = new LinkedHashMap<>(apiStatus);
+        updated.put(key, status);
+        return new RouteTable(commands, tries, pathMaps, ImmutableMap.copyOf(updated), routeCache, cacheHits, cacheMisses);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final Map<String, RevolverHttpCommand> commands = new LinkedHashMap<>();
+
+        private final Map<String, ApiPathTrie> tries = new LinkedHashMap<>();
+
+        private final Map<String, ImmutableList<ApiPathMap>> pathMaps = new LinkedHashMap<>();
+
+        private final Map<String, Boolean> apiStatus = new LinkedHashMap<>();
+
+        private int routeCacheSize;
+
+        private MetricRegistry metrics;
+
+        private Builder() {
+        }
+
+        public Builder routeCache(final int routeCacheSize, final MetricRegistry metrics) {
+            this.routeCacheSize = routeCacheSize;
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder service(final String service, final RevolverHttpCommand command, final List<ApiPathMap> apiPathMaps) {
+            final ApiPathTrie trie = new ApiPathTrie();
+            apiPathMaps.forEach(trie::add);
+            commands.put(service, command);
+            tries.put(service, trie);
+            pathMaps.put(service, ImmutableList.copyOf(apiPathMaps));
+            apiPathMaps.forEach(a -> apiStatus.put(service + "." + a.getApi().getApi(), true));
+            return this;
+        }
+
+        /**
+         * Builds the table; apis disabled in the previous table stay disabled and commands that were registered
+         * outside of the service configuration (callbacks) are carried over
+         */
+        public RouteTable build(final RouteTable previous) {
+            previous.getCommands().forEach((service, command) -> {
+                if (!previous.getTries().containsKey(service)) {
+                    commands.putIfAbsent(service, command);
+                }
+            });
+            previous.getApiStatus().forEach((key, status) -> {
+                if (!status && apiStatus.containsKey(key)) {
+                    apiStatus.put(key, false);
+                }
+            });
+            if (routeCacheSize <= 0 || metrics == null) {
+                return new RouteTable(ImmutableMap.copyOf(commands), ImmutableMap.copyOf(tries),
+                        ImmutableMap.copyOf(pathMaps), ImmutableMap.copyOf(apiStatus), null, null, null);
+            }
+            return new RouteTable(ImmutableMap.copyOf(commands), ImmutableMap.copyOf(tries),
+                    ImmutableMap.copyOf(pathMaps), ImmutableMap.copyOf(apiStatus),
+                    CacheBuilder.newBuilder().maximumSize(routeCacheSize).build(),
+                    metrics.meter(MetricRegistry.name("revolver", "routes", "cache", "hit")),
+                    metrics.meter(MetricRegistry.name("revolver", "routes", "cache", "miss")));
+        }
+    }
+
+    @Value
+    private static class RouteKey {
+        String service;
+        RevolverHttpApiConfig.RequestMethod method;
+        String path;
+    }
+}
@@ -17,12 +17,19 @@
 
 package io.dropwizard.revolver.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import io.dropwizard.msgpack.MsgPackMediaType;
 
 import javax.ws.rs.core.MediaType;
+import javax.xml.namespace.QName;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * @author phaneesh
@@ -40,4 +47,31 @@ public interface ResponseTransformationUtil {
             return msgPackObjectMapper.writeValueAsBytes(response);
         return jsonObjectMapper.writeValueAsBytes(response);
     }
+
+    /**
+     * Copies the body token by token from the source format into the target format without building an intermediate tree.
+     * Xml output is rooted at "Response" and top level arrays are written as repeated "item" elements, same as the object mapper does.
+     * The generator is set up with the target mapper's serialization config (indentation and such), as its writers are.
+     */
+    static void transcode(InputStream body, ObjectMapper sourceMapper, ObjectMapper targetMapper, OutputStream output) throws IOException {
+        try (JsonParser parser = sourceMapper.getFactory().createParser(body);
+             JsonGenerator generator = targetMapper.getFactory().createGenerator(output)) {
+            targetMapper.getSerializationConfig().initialize(generator);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if(parser.nextToken() == null) {
+                return;
+            }
+            if(generator instanceof ToXmlGenerator) {
+                ((ToXmlGenerator) generator).setNextName(new QName("Response"));
+                if(parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    generator.writeStartObject();
+                    generator.writeFieldName("item");
+                    generator.copyCurrentStructure(parser);
+                    generator.writeEndObject();
+                    return;
+                }
+            }
+            generator.copyCurrentStructure(parser);
+        }
+    }
 }
@@ -165,6 +165,17 @@ public class BaseRevolverTest {
                                                 .concurrency(1).timeout(2000)
                                                 .build())
                                         .build()).build())
+                        .api(RevolverHttpApiConfig.configBuilder()
+                                .api("test_stream")
+                                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                                .method(RevolverHttpApiConfig.RequestMethod.POST)
+                                .path("{version}/stream")
+                                .streaming(true)
+                                .runtime(HystrixCommandConfig.builder()
+                                        .threadPool(ThreadPoolConfig.builder()
+                                                .concurrency(1).timeout(2000)
+                                                .build())
+                                        .build()).build())
                         .build())
                 .service(RevolverHttpsServiceConfig.builder()
                         .authEnabled(false)
@@ -17,12 +17,13 @@
 
 package io.dropwizard.revolver;
 
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
 import io.dropwizard.revolver.persistence.InMemoryPersistenceProvider;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.junit.Test;
 
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author phaneesh
@@ -39,5 +40,37 @@ public class RevolverBundleTest extends BaseRevolverTest {
         assertNotNull(RevolverBundle.getHttpCommand("test"));
     }
 
+    @Test
+    public void testReloadSwapsRouteTable() throws Exception {
+        val before = RevolverBundle.getRouteTable();
+        assertTrue(RevolverBundle.setApiStatus("test.test", false));
+        RevolverBundle.loadServiceConfiguration(revolverConfig);
+        val after = RevolverBundle.getRouteTable();
+        assertNotSame(before, after);
+        assertEquals(before.getPathMaps().get("test").size(), after.getPathMaps().get("test").size());
+        assertFalse(RevolverBundle.getApiStatus("test.test"));
+        assertTrue(RevolverBundle.setApiStatus("test.test", true));
+        assertFalse(RevolverBundle.setApiStatus("test.unknown", false));
+    }
+
+    @Test
+    public void testRouteCache() {
+        val routes = RevolverBundle.getRouteTable();
+        val hits = routes.getCacheHits().getCount();
+        assertNotNull(routes.match("test", RevolverHttpApiConfig.RequestMethod.GET, "v1/test"));
+        assertNotNull(routes.match("test", RevolverHttpApiConfig.RequestMethod.GET, "/v1/test/"));
+        assertNull(routes.match("test", RevolverHttpApiConfig.RequestMethod.GET, "v1/unknown/path/here"));
+        assertNull(routes.match("test", RevolverHttpApiConfig.RequestMethod.GET, "v1/unknown/path/here"));
+        assertEquals(hits + 2, routes.getCacheHits().getCount());
+    }
+
+    @Test
+    public void testSetterCachedPerCommand() throws Exception {
+        val command = RevolverBundle.getHttpCommand("test");
+        assertSame(command.setter("test"), command.setter("test"));
+        RevolverBundle.loadServiceConfiguration(revolverConfig);
+        assertNotSame(command.setter("test"), RevolverBundle.getHttpCommand("test").setter("test"));
+    }
+
 
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core;
+
+import lombok.val;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author phaneesh
+ */
+public class CancellationTest {
+
+    @Test
+    public void testCancelsOnlyItsOwnExecution() {
+        val first = new AtomicInteger();
+        val second = new AtomicInteger();
+        val timedOut = new RevolverCommand.Cancellation();
+        val running = new RevolverCommand.Cancellation();
+        timedOut.onCancel(first::incrementAndGet);
+        running.onCancel(second::incrementAndGet);
+        timedOut.cancel();
+        assertEquals(1, first.get());
+        assertEquals(0, second.get());
+    }
+
+    @Test
+    public void testLateRegistrationIsCancelled() {
+        val cancelled = new AtomicInteger();
+        val cancellation = new RevolverCommand.Cancellation();
+        cancellation.cancel();
+        cancellation.onCancel(cancelled::incrementAndGet);
+        assertEquals(1, cancelled.get());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.config;
+
+import io.dropwizard.revolver.core.config.hystrix.ConcurrencyLimitConfig;
+import lombok.val;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Defaults have to hold for configs built by jackson (no args constructor) as well as by builders
+ * @author phaneesh
+ */
+public class ConfigDefaultsTest {
+
+    @Test
+    public void testAsyncExecutorDefaults() {
+        for (val config : new AsyncExecutorConfig[] {new AsyncExecutorConfig(), AsyncExecutorConfig.builder().build(),
+                new RevolverConfig().getAsyncExecutor()}) {
+            assertEquals(32, config.getConcurrency());
+            assertEquals(1000, config.getMaxQueueSize());
+            assertEquals(60, config.getKeepAliveInSeconds());
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimitDefaults() {
+        for (val config : new ConcurrencyLimitConfig[] {new ConcurrencyLimitConfig(), ConcurrencyLimitConfig.builder().build(),
+                new HystrixCommandConfig().getConcurrencyLimit()}) {
+            assertFalse(config.isEnabled());
+            assertEquals(20, config.getInitialLimit());
+            assertEquals(1, config.getMinLimit());
+            assertEquals(200, config.getMaxLimit());
+            assertEquals(3, config.getAlpha());
+            assertEquals(6, config.getBeta());
+            assertEquals(0.9, config.getBackoffRatio(), 0.0);
+            assertEquals(60000, config.getProbeInterval());
+        }
+    }
+
+    @Test
+    public void testLoadSheddingDefaults() {
+        for (val config : new LoadSheddingConfig[] {new LoadSheddingConfig(), LoadSheddingConfig.builder().build(),
+                new RevolverConfig().getLoadShedding()}) {
+            assertFalse(config.isEnabled());
+            assertEquals(1000, config.getMaxInflight());
+            assertEquals(0.9, config.getCpuThreshold(), 0.0);
+            assertFalse(config.isPriorityHeaderTrusted());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.revolver.core.config.hystrix.ConcurrencyLimitConfig;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testRejectsOverLimit() {
+        val metrics = new MetricRegistry();
+        val limiter = new ConcurrencyLimiter("test.limit", ConcurrencyLimitConfig.builder().enabled(true).initialLimit(2).build(), metrics);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, metrics.meter("revolver.limiter.test.limit.rejected").getCount());
+        assertEquals(2, metrics.getGauges().get("revolver.limiter.test.limit.inflight").getValue());
+        limiter.onIgnore();
+        assertTrue(limiter.tryAcquire());
+        limiter.onIgnore();
+        limiter.onIgnore();
+        assertEquals(0, limiter.getInflight());
+        assertEquals(2, metrics.getGauges().get("revolver.limiter.test.limit.limit").getValue());
+    }
+
+    @Test
+    public void testAdaptsToLatency() {
+        val limiter = new ConcurrencyLimiter("test.adapt", ConcurrencyLimitConfig.builder().enabled(true).initialLimit(10)
+                .minLimit(2).maxLimit(20).build(), new MetricRegistry());
+        //First sample sets the no load rtt
+        complete(limiter, 1, 5);
+        //Fully used limit with little queueing grows
+        for (int i = 0; i < 5; i++) {
+            complete(limiter, limiter.getLimit(), 6);
+        }
+        assertEquals(15, limiter.getLimit());
+        //Latency quadrupling means most in flight calls are queued: shrink
+        complete(limiter, limiter.getLimit(), 20);
+        assertEquals(14, limiter.getLimit());
+        //Idle limits don't grow
+        complete(limiter, 2, 6);
+        assertEquals(14, limiter.getLimit());
+        //Timeouts back off
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        assertEquals(12, limiter.getLimit());
+    }
+
+    @Test
+    public void testNoLoadRttIsWindowMinimum() throws Exception {
+        val limiter = new ConcurrencyLimiter("test.probe", ConcurrencyLimitConfig.builder().enabled(true).initialLimit(10)
+                .maxLimit(20).probeInterval(100).build(), new MetricRegistry());
+        complete(limiter, 1, 5);
+        //Backend got slower; queueing estimates of 4-5 against 5ms leave the limit alone
+        complete(limiter, limiter.getLimit(), 8);
+        complete(limiter, limiter.getLimit(), 9);
+        complete(limiter, limiter.getLimit(), 8);
+        assertEquals(10, limiter.getLimit());
+        Thread.sleep(110);
+        //A loaded call at probe time: the no load rtt becomes the window's 8ms, not its 20ms
+        complete(limiter, limiter.getLimit(), 20);
+        complete(limiter, limiter.getLimit(), 9);
+        assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    public void testZeroRttIsNoQueueing() {
+        val limiter = new ConcurrencyLimiter("test.zero", ConcurrencyLimitConfig.builder().enabled(true).initialLimit(10)
+                .maxLimit(20).build(), new MetricRegistry());
+        //Calls completing within the clock's resolution (or with the clock stepping back) have an rtt of 0 or less
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        limiter.onSuccess(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        assertEquals(11, limiter.getLimit());
+    }
+
+    private void complete(final ConcurrencyLimiter limiter, final int inflight, final long rttMillis) {
+        for (int i = 0; i < inflight; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        limiter.onSuccess(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        for (int i = 1; i < inflight; i++) {
+            limiter.onIgnore();
+        }
+    }
+}
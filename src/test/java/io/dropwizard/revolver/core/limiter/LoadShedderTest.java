@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.core.limiter;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.revolver.core.config.LoadSheddingConfig;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class LoadShedderTest {
+
+    @Test
+    public void testShedsLowerPrioritiesFirstOnInflight() {
+        val metrics = new MetricRegistry();
+        val shedder = new LoadShedder(LoadSheddingConfig.builder().enabled(true).maxInflight(10).cpuThreshold(1.0).build(), metrics, () -> 0);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(shedder.tryAcquire(RequestPriority.LOW));
+        }
+        assertFalse(shedder.tryAcquire(RequestPriority.LOW));
+        assertTrue(shedder.tryAcquire(RequestPriority.NORMAL));
+        assertTrue(shedder.tryAcquire(RequestPriority.NORMAL));
+        assertFalse(shedder.tryAcquire(RequestPriority.NORMAL));
+        assertTrue(shedder.tryAcquire(RequestPriority.HIGH));
+        assertTrue(shedder.tryAcquire(RequestPriority.CRITICAL));
+        assertFalse(shedder.tryAcquire(RequestPriority.CRITICAL));
+        assertEquals(1, metrics.meter("revolver.shed.low").getCount());
+        assertEquals(1, metrics.meter("revolver.shed.normal").getCount());
+        assertEquals(1, metrics.meter("revolver.shed.critical").getCount());
+        assertEquals(10, metrics.getGauges().get("revolver.shed.inflight").getValue());
+        shedder.release();
+        assertEquals(9, shedder.getInflight());
+    }
+
+    @Test
+    public void testShedsOnCpu() {
+        val cpu = new AtomicReference<Double>(0.93);
+        val shedder = new LoadShedder(LoadSheddingConfig.builder().enabled(true).cpuThreshold(0.9).build(), new MetricRegistry(), cpu::get);
+        assertFalse(shedder.tryAcquire(RequestPriority.LOW));
+        assertTrue(shedder.tryAcquire(RequestPriority.NORMAL));
+        assertTrue(shedder.tryAcquire(RequestPriority.HIGH));
+        assertEquals(2, shedder.getInflight());
+    }
+
+    @Test
+    public void testPriorityHeader() {
+        val untrusted = new LoadShedder(LoadSheddingConfig.builder().enabled(true).build(), new MetricRegistry(), () -> 0);
+        assertEquals(RequestPriority.LOW, untrusted.priority(RequestPriority.LOW, "critical"));
+        assertEquals(RequestPriority.NORMAL, untrusted.priority(null, null));
+        val trusted = new LoadShedder(LoadSheddingConfig.builder().enabled(true).priorityHeaderTrusted(true).build(), new MetricRegistry(), () -> 0);
+        assertEquals(RequestPriority.CRITICAL, trusted.priority(RequestPriority.LOW, "critical"));
+        assertEquals(RequestPriority.LOW, trusted.priority(RequestPriority.LOW, "bogus"));
+    }
+}
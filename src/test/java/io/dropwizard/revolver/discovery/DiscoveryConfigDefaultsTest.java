@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import io.dropwizard.revolver.discovery.config.OutlierDetectionConfig;
+import lombok.val;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Defaults have to hold for configs built by jackson (no args constructor) as well as by builders
+ * @author phaneesh
+ */
+public class DiscoveryConfigDefaultsTest {
+
+    @Test
+    public void testOutlierDetectionDefaults() {
+        for (val config : new OutlierDetectionConfig[] {new OutlierDetectionConfig(), OutlierDetectionConfig.builder().build()}) {
+            assertTrue(config.isEnabled());
+            assertEquals(5, config.getConsecutiveFailures());
+            assertEquals(3.0, config.getLatencyFactor(), 0.0);
+            assertEquals(100, config.getMinLatency());
+            assertEquals(30000, config.getBaseEjectionTime());
+            assertEquals(300000, config.getMaxEjectionTime());
+            assertEquals(50, config.getMaxEjectionPercent());
+        }
+    }
+
+    @Test
+    public void testServiceResolverDefaults() {
+        for (val config : new ServiceResolverConfig[] {new ServiceResolverConfig(), ServiceResolverConfig.builder().build()}) {
+            assertFalse(config.isUseCurator());
+            assertEquals(1000, config.getRefreshInterval());
+            assertEquals(8, config.getStartupParallelism());
+            assertEquals(30000, config.getStartupTimeout());
+            assertEquals(50, config.getLocalityThreshold());
+            assertNotNull(config.getOutlierDetection());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author phaneesh
+ */
+public class DiscoveryHealthCheckTest {
+
+    @Test
+    public void testUnhealthyUntilWarmOrDeadline() {
+        val resolver = mock(RevolverServiceResolver.class);
+        val healthCheck = new DiscoveryHealthCheck(resolver);
+        when(resolver.coldServices()).thenReturn(ImmutableSet.of("one"));
+        when(resolver.isReady()).thenReturn(false);
+        assertFalse(healthCheck.execute().isHealthy());
+        when(resolver.isReady()).thenReturn(true);
+        assertTrue(healthCheck.execute().isHealthy());
+        when(resolver.coldServices()).thenReturn(Collections.emptySet());
+        assertTrue(healthCheck.execute().isHealthy());
+    }
+
+    @Test
+    public void testReadyWithoutDiscoveredServices() throws Exception {
+        val resolver = RevolverServiceResolver.builder().build();
+        assertTrue(resolver.isReady());
+        assertTrue(resolver.awaitReady());
+        assertTrue(resolver.coldServices().isEmpty());
+    }
+}
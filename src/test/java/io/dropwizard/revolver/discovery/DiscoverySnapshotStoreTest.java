@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.val;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class DiscoverySnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        val store = new DiscoverySnapshotStore(folder.getRoot().toPath().resolve("discovery").resolve("nodes.bin"));
+        assertTrue(store.load().isEmpty());
+        val services = ImmutableMap.of(
+                "one", new DiscoverySnapshotStore.StoredService("test", 1000L, Arrays.asList(
+                        new DiscoverySnapshotStore.StoredNode("a", 80, "east", "z1", "r1"),
+                        new DiscoverySnapshotStore.StoredNode("b", 81, null, null, null))),
+                "two", new DiscoverySnapshotStore.StoredService("", 2000L, Arrays.asList(
+                        new DiscoverySnapshotStore.StoredNode("c", 82, null, "z2", null))));
+        store.save(services);
+        assertEquals(services, store.load());
+        store.save(ImmutableMap.of());
+        assertTrue(store.load().isEmpty());
+    }
+
+    @Test
+    public void testUnreadableFileIgnored() throws Exception {
+        val path = folder.newFile("nodes.bin").toPath();
+        Files.write(path, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        assertTrue(new DiscoverySnapshotStore(path).load().isEmpty());
+    }
+}
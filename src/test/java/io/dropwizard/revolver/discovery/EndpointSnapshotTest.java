@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.codahale.metrics.MetricRegistry;
+import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.model.ServiceNode;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author phaneesh
+ */
+public class EndpointSnapshotTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSwappedOnlyOnChange() {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        val one = node("one", HealthcheckStatus.healthy);
+        val two = node("two", HealthcheckStatus.healthy);
+        when(finder.getAll(any())).thenReturn(Arrays.asList(one, two));
+        val snapshot = new EndpointSnapshot(finder, "test", "test", EndpointSnapshot.Locality.NONE, 50, new MetricRegistry());
+        assertTrue(snapshot.refresh());
+        val healthy = snapshot.healthy();
+        assertEquals(Arrays.asList(endpoint("one"), endpoint("two")), healthy);
+
+        when(finder.getAll(any())).thenReturn(Arrays.asList(two, one));
+        assertFalse(snapshot.refresh());
+        assertSame(healthy, snapshot.healthy());
+
+        when(finder.getAll(any())).thenReturn(Arrays.asList(one, node("two", HealthcheckStatus.unhealthy)));
+        assertTrue(snapshot.refresh());
+        assertEquals(Arrays.asList(endpoint("one")), snapshot.healthy());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPrefersLocalZoneUntilThreshold() {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        val metrics = new MetricRegistry();
+        val snapshot = new EndpointSnapshot(finder, "test", "test", new EndpointSnapshot.Locality("east", "a", null), 50, metrics);
+        when(finder.getAll(any())).thenReturn(Arrays.asList(node("one", "a", HealthcheckStatus.healthy),
+                node("two", "a", HealthcheckStatus.healthy), node("three", "c", HealthcheckStatus.healthy)));
+        assertTrue(snapshot.refresh());
+        assertEquals(Arrays.asList(endpoint("one"), endpoint("two")), snapshot.preferred());
+        assertEquals(3, snapshot.healthy().size());
+        snapshot.selected(endpoint("one"));
+        snapshot.selected(endpoint("three"));
+        assertEquals(1, metrics.meter("revolver.discovery.test.local").getCount());
+        assertEquals(1, metrics.meter("revolver.discovery.test.remote").getCount());
+
+        //One of three local nodes healthy is below the threshold: spill over to the region (all nodes here)
+        when(finder.getAll(any())).thenReturn(Arrays.asList(node("one", "a", HealthcheckStatus.healthy),
+                node("two", "a", HealthcheckStatus.unhealthy), node("four", "a", HealthcheckStatus.unhealthy),
+                node("three", "c", HealthcheckStatus.healthy)));
+        assertTrue(snapshot.refresh());
+        assertEquals(Arrays.asList(endpoint("one"), endpoint("three")), snapshot.preferred());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSpillsOverFromUndersizedLocalZone() {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        val snapshot = new EndpointSnapshot(finder, "test", "test", new EndpointSnapshot.Locality("east", "a", null), 50, new MetricRegistry());
+        //A fully healthy local zone with one of twelve healthy nodes can't take an even third of the traffic
+        val nodes = new ArrayList<ServiceNode<RevolverServiceResolver.ShardInfo>>();
+        nodes.add(node("a1", "a", HealthcheckStatus.healthy));
+        for (int i = 0; i < 6; i++) {
+            nodes.add(node("b" + i, "b", HealthcheckStatus.healthy));
+            if (i < 5) {
+                nodes.add(node("c" + i, "c", HealthcheckStatus.healthy));
+            }
+        }
+        when(finder.getAll(any())).thenReturn(nodes);
+        assertTrue(snapshot.refresh());
+        assertEquals(12, snapshot.preferred().size());
+
+        //Three zones of four with two healthy in the local one: degraded, but still about its share
+        nodes.clear();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(node("a" + i, "a", i < 2 ? HealthcheckStatus.healthy : HealthcheckStatus.unhealthy));
+            nodes.add(node("b" + i, "b", HealthcheckStatus.healthy));
+            nodes.add(node("c" + i, "c", HealthcheckStatus.healthy));
+        }
+        assertTrue(snapshot.refresh());
+        assertEquals(Arrays.asList(endpoint("a0"), endpoint("a1")), snapshot.preferred());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSeededNodesKeptWhileDisconnected() {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        when(finder.getAll(any())).thenReturn(Collections.emptyList());
+        val connected = new AtomicBoolean(false);
+        val metrics = new MetricRegistry();
+        val snapshot = new EndpointSnapshot(finder, "test", "test", EndpointSnapshot.Locality.NONE, 50, metrics, connected::get);
+        assertEquals(-1L, metrics.getGauges().get("revolver.discovery.test.staleness").getValue());
+        snapshot.seed(Collections.singletonList(new DiscoverySnapshotStore.StoredNode("one", 80, "east", "a", null)),
+                System.currentTimeMillis() - 5000);
+        assertEquals(Collections.singletonList(endpoint("one")), snapshot.preferred());
+        assertTrue((Long) metrics.getGauges().get("revolver.discovery.test.staleness").getValue() >= 5000);
+
+        assertFalse(snapshot.refresh());
+        assertEquals(Collections.singletonList(endpoint("one")), snapshot.healthy());
+
+        when(finder.getAll(any())).thenReturn(Collections.singletonList(node("two", "a", HealthcheckStatus.healthy)));
+        connected.set(true);
+        assertTrue(snapshot.refresh());
+        assertEquals(Collections.singletonList(endpoint("two")), snapshot.healthy());
+        assertEquals(Collections.singletonList(new DiscoverySnapshotStore.StoredNode("two", 80, "east", "a", null)), snapshot.nodes());
+        assertTrue((Long) metrics.getGauges().get("revolver.discovery.test.staleness").getValue() < 5000);
+
+        //Seeding never overrides what the finder said
+        snapshot.seed(Collections.singletonList(new DiscoverySnapshotStore.StoredNode("one", 80, null, null, null)), 0);
+        assertEquals(Collections.singletonList(endpoint("two")), snapshot.healthy());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testColdSnapshotIsEmptyUntilRefreshed() {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        when(finder.getAll(any())).thenReturn(Collections.singletonList(node("one", HealthcheckStatus.healthy)));
+        val snapshot = new EndpointSnapshot(finder, "test", "test", EndpointSnapshot.Locality.NONE, 50, new MetricRegistry());
+        assertTrue(snapshot.healthy().isEmpty());
+        assertTrue(snapshot.preferred().isEmpty());
+        verify(finder, never()).getAll(any());
+
+        assertTrue(snapshot.refresh());
+        assertEquals(Collections.singletonList(endpoint("one")), snapshot.preferred());
+    }
+
+    @Test
+    public void testLocalityNotPartOfShard() {
+        val shard = new RevolverServiceResolver.ShardInfo("test", "east", "a", "r1");
+        assertEquals(new RevolverServiceResolver.ShardInfo("test"), shard);
+        assertEquals(new RevolverServiceResolver.ShardInfo("test").hashCode(), shard.hashCode());
+    }
+
+    private ServiceNode<RevolverServiceResolver.ShardInfo> node(final String host, final HealthcheckStatus status) {
+        return node(host, null, status);
+    }
+
+    private ServiceNode<RevolverServiceResolver.ShardInfo> node(final String host, final String zone, final HealthcheckStatus status) {
+        val node = new ServiceNode<RevolverServiceResolver.ShardInfo>(host, 80,
+                RevolverServiceResolver.ShardInfo.builder().environment("test").region("east").zone(zone).build());
+        node.setHealthcheckStatus(status);
+        return node;
+    }
+
+    private Endpoint endpoint(final String host) {
+        return Endpoint.builder().host(host).port(80).build();
+    }
+}
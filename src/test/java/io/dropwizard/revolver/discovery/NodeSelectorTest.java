@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import io.dropwizard.revolver.discovery.config.OutlierDetectionConfig;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class NodeSelectorTest {
+
+    private final Endpoint fast = Endpoint.builder().host("fast").port(80).build();
+
+    private final Endpoint slow = Endpoint.builder().host("slow").port(80).build();
+
+    @Test
+    public void testPrefersLowerLatency() {
+        val selector = new NodeSelector();
+        call(selector, fast, 10, true);
+        call(selector, slow, 500, true);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(fast, selector.select(Arrays.asList(fast, slow)));
+        }
+    }
+
+    @Test
+    public void testPrefersFewerInflight() {
+        val selector = new NodeSelector();
+        call(selector, fast, 10, true);
+        call(selector, slow, 10, true);
+        selector.started(fast);
+        selector.started(fast);
+        assertEquals(slow, selector.select(Arrays.asList(fast, slow)));
+    }
+
+    @Test
+    public void testFailuresArePenalized() {
+        val selector = new NodeSelector();
+        call(selector, fast, 10, false);
+        call(selector, slow, 100, true);
+        assertEquals(slow, selector.select(Arrays.asList(fast, slow)));
+    }
+
+    @Test
+    public void testSingleOrNoNode() {
+        val selector = new NodeSelector();
+        assertEquals(slow, selector.select(Collections.singletonList(slow)));
+        assertNull(selector.select(Collections.emptyList()));
+    }
+
+    @Test
+    public void testEjectsConsecutivelyFailingNode() {
+        val selector = new NodeSelector(OutlierDetectionConfig.builder().consecutiveFailures(3).build());
+        val third = Endpoint.builder().host("third").port(80).build();
+        call(selector, slow, 10, true);
+        call(selector, third, 10, true);
+        for (int i = 0; i < 3; i++) {
+            call(selector, fast, 10, false);
+        }
+        val state = selector.state(fast);
+        assertTrue(state.isEjected());
+        assertEquals(1, state.getEjections());
+        assertTrue(state.getEjectedUntil() > System.currentTimeMillis());
+        for (int i = 0; i < 10; i++) {
+            assertNotEquals(fast, selector.select(Arrays.asList(fast, slow, third)));
+        }
+    }
+
+    @Test
+    public void testAbandonedCallsDontCount() {
+        val selector = new NodeSelector(OutlierDetectionConfig.builder().consecutiveFailures(3).build());
+        call(selector, slow, 10, true);
+        call(selector, fast, 10, false);
+        call(selector, fast, 10, false);
+        selector.started(fast);
+        selector.abandoned(fast);
+        assertEquals(2, selector.state(fast).getConsecutiveFailures());
+        assertEquals(0, selector.state(fast).getInflight());
+        call(selector, fast, 10, false);
+        assertTrue(selector.state(fast).isEjected());
+    }
+
+    @Test
+    public void testEjectionCappedByPercent() {
+        val selector = new NodeSelector(OutlierDetectionConfig.builder().consecutiveFailures(1).maxEjectionPercent(50).build());
+        call(selector, slow, 10, true);
+        call(selector, fast, 10, false);
+        call(selector, slow, 10, false);
+        assertTrue(selector.state(fast).isEjected());
+        assertFalse(selector.state(slow).isEjected());
+    }
+
+    @Test
+    public void testEjectsSlowOutlier() {
+        val selector = new NodeSelector(OutlierDetectionConfig.builder().minLatency(50).latencyFactor(3.0).build());
+        val third = Endpoint.builder().host("third").port(80).build();
+        call(selector, fast, 10, true);
+        call(selector, third, 20, true);
+        call(selector, slow, 900, true);
+        assertTrue(selector.state(slow).isEjected());
+        assertFalse(selector.state(fast).isEjected());
+    }
+
+    private void call(final NodeSelector selector, final Endpoint node, final long millis, final boolean success) {
+        selector.started(node);
+        selector.completed(node, millis, success);
+    }
+}
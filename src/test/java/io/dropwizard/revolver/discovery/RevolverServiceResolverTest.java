@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.model.ServiceNode;
+import io.dropwizard.revolver.discovery.model.Endpoint;
+import io.dropwizard.revolver.discovery.model.RangerEndpointSpec;
+import lombok.val;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author phaneesh
+ */
+public class RevolverServiceResolverTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveOther() throws Exception {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        when(finder.getAll(any())).thenReturn(Arrays.asList(node("one", HealthcheckStatus.healthy), node("two", HealthcheckStatus.healthy),
+                node("three", HealthcheckStatus.unhealthy)));
+        val resolver = resolver();
+        final RangerEndpointSpec spec = spec("other");
+        resolver.register(spec, finder);
+        assertTrue(resolver.awaitReady());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(endpoint("two"), resolver.resolveOther(spec, endpoint("one")));
+            assertEquals(endpoint("one"), resolver.resolveOther(spec, endpoint("two")));
+        }
+        when(finder.getAll(any())).thenReturn(Arrays.asList(node("one", HealthcheckStatus.healthy), node("two", HealthcheckStatus.unhealthy)));
+        //Picked up by the next scheduled refresh
+        for (int i = 0; i < 300 && resolver.resolveOther(spec, endpoint("one")) != null; i++) {
+            Thread.sleep(10);
+        }
+        assertNull(resolver.resolveOther(spec, endpoint("one")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testColdUntilFinderHasNodes() throws Exception {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        val started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.await();
+            return null;
+        }).when(finder).start();
+        when(finder.getAll(any())).thenReturn(Collections.emptyList());
+        val resolver = resolver();
+        resolver.register(spec("warming"), finder);
+        assertEquals(Collections.singleton("warming"), resolver.coldServices());
+        assertFalse(resolver.isReady());
+
+        //Started, but without nodes: still cold
+        started.countDown();
+        Thread.sleep(100);
+        assertEquals(Collections.singleton("warming"), resolver.coldServices());
+
+        //Warm once a refresh after the start sees healthy nodes
+        when(finder.getAll(any())).thenReturn(Collections.singletonList(node("one", HealthcheckStatus.healthy)));
+        assertTrue(resolver.awaitReady());
+        assertTrue(resolver.coldServices().isEmpty());
+        assertTrue(resolver.isReady());
+        assertEquals(endpoint("one"), resolver.resolve(spec("warming")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadyAfterStartupTimeout() throws Exception {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        when(finder.getAll(any())).thenReturn(Collections.emptyList());
+        val resolver = resolver(ServiceResolverConfig.builder().startupTimeout(200).build());
+        resolver.register(spec("never_warm"), finder);
+        assertFalse(resolver.isReady());
+        assertFalse(resolver.awaitReady());
+        assertTrue(resolver.isReady());
+        assertEquals(Collections.singleton("never_warm"), resolver.coldServices());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReregisterKeepsNodesWhileDisconnected() throws Exception {
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> finder = mock(SimpleShardedServiceFinder.class);
+        when(finder.getAll(any())).thenReturn(Collections.singletonList(node("one", HealthcheckStatus.healthy)));
+        final CuratorFramework curator = curator();
+        val resolver = resolver(new ServiceResolverConfig(), curator);
+        resolver.register(spec("reloaded"), finder);
+        assertTrue(resolver.awaitReady());
+
+        //Config reload while zookeeper is unreachable: the new finder has nothing to say
+        when(curator.getZookeeperClient().isConnected()).thenReturn(false);
+        final SimpleShardedServiceFinder<RevolverServiceResolver.ShardInfo> reloaded = mock(SimpleShardedServiceFinder.class);
+        when(reloaded.getAll(any())).thenReturn(Collections.emptyList());
+        resolver.register(spec("reloaded"), reloaded);
+        verify(finder, timeout(1000)).stop();
+        verify(reloaded, timeout(1000)).start();
+        assertTrue(resolver.coldServices().isEmpty());
+        //Past a scheduled refresh through the new finder
+        Thread.sleep(1500);
+        verify(reloaded, atLeastOnce()).getAll(any());
+        assertEquals(endpoint("one"), resolver.resolve(spec("reloaded")));
+    }
+
+    private RevolverServiceResolver resolver() {
+        //Configured as jackson would build it from an empty block
+        return resolver(new ServiceResolverConfig());
+    }
+
+    private RevolverServiceResolver resolver(final ServiceResolverConfig config) {
+        return resolver(config, curator());
+    }
+
+    private RevolverServiceResolver resolver(final ServiceResolverConfig config, final CuratorFramework curator) {
+        return RevolverServiceResolver.usingCurator()
+                .resolverConfig(config)
+                .curatorFramework(curator)
+                .objectMapper(new ObjectMapper())
+                .build();
+    }
+
+    private CuratorFramework curator() {
+        final CuratorFramework curator = mock(CuratorFramework.class, RETURNS_DEEP_STUBS);
+        when(curator.getZookeeperClient().isConnected()).thenReturn(true);
+        return curator;
+    }
+
+    private RangerEndpointSpec spec(final String service) {
+        return new RangerEndpointSpec(service, "test");
+    }
+
+    private ServiceNode<RevolverServiceResolver.ShardInfo> node(final String host, final HealthcheckStatus status) {
+        val node = new ServiceNode<RevolverServiceResolver.ShardInfo>(host, 80, new RevolverServiceResolver.ShardInfo("test"));
+        node.setHealthcheckStatus(status);
+        return node;
+    }
+
+    private Endpoint endpoint(final String host) {
+        return Endpoint.builder().host(host).port(80).build();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpHedgeConfig;
+import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
+import lombok.val;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class HedgingPolicyTest {
+
+    @Test
+    public void testDelayFollowsLatencyPercentile() {
+        val metrics = new MetricRegistry();
+        val policy = new HedgingPolicy("hedge", apiConfig(5), metrics);
+        for (int i = 1; i <= 100; i++) {
+            policy.record(i);
+        }
+        assertTrue(policy.delay() >= 90);
+        assertEquals(100, metrics.histogram("revolver.hedge.hedge.test.latency").getCount());
+    }
+
+    @Test
+    public void testNoDelayWithoutSamples() {
+        assertEquals(-1, new HedgingPolicy("hedge", apiConfig(5), new MetricRegistry()).delay());
+    }
+
+    @Test
+    public void testHedgesCappedByBudget() {
+        val metrics = new MetricRegistry();
+        val policy = new HedgingPolicy("hedge", apiConfig(10), metrics);
+        int hedged = 0;
+        for (int i = 0; i < 100; i++) {
+            policy.called();
+            if (policy.tryHedge()) {
+                hedged++;
+            }
+        }
+        assertEquals(10, hedged);
+        assertEquals(10, metrics.meter("revolver.hedge.hedge.test.hedged").getCount());
+        assertEquals(90, metrics.meter("revolver.hedge.hedge.test.throttled").getCount());
+    }
+
+    @Test
+    public void testHedgeWinsAndPrimaryIsCancelled() throws Exception {
+        val metrics = new MetricRegistry();
+        val policy = warmedUp(metrics);
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val hedge = CompletableFuture.completedFuture(RevolverHttpResponse.builder().statusCode(202).build());
+        val result = policy.execute(primary, () -> hedge);
+        assertEquals(202, result.get(1, TimeUnit.SECONDS).getStatusCode());
+        //The loser is cancelled on the thread that settled the race
+        for (int i = 0; i < 100 && metrics.histogram("revolver.hedge.hedge.test.latency").getCount() < 101; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(primary.isCancelled());
+        assertTrue(HedgingPolicy.lost(primary));
+        assertFalse(HedgingPolicy.lost(hedge));
+        assertEquals(1, metrics.meter("revolver.hedge.hedge.test.won").getCount());
+        //The cancelled primary still counts toward the delay
+        assertEquals(101, metrics.histogram("revolver.hedge.hedge.test.latency").getCount());
+    }
+
+    @Test
+    public void testPrimaryWinsAndHedgeIsCancelled() throws Exception {
+        val metrics = new MetricRegistry();
+        val policy = warmedUp(metrics);
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val hedge = new CompletableFuture<RevolverHttpResponse>();
+        val result = policy.execute(primary, () -> hedge);
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        primary.complete(RevolverHttpResponse.builder().statusCode(200).build());
+        assertEquals(200, result.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertTrue(hedge.isCancelled());
+        assertEquals(1, metrics.meter("revolver.hedge.hedge.test.hedged").getCount());
+        assertEquals(0, metrics.meter("revolver.hedge.hedge.test.won").getCount());
+        assertEquals(101, metrics.histogram("revolver.hedge.hedge.test.latency").getCount());
+    }
+
+    @Test
+    public void testServerErrorDoesNotBeatOutstandingCall() throws Exception {
+        val metrics = new MetricRegistry();
+        val policy = warmedUp(metrics);
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val hedge = new CompletableFuture<RevolverHttpResponse>();
+        val result = policy.execute(primary, () -> hedge);
+        Thread.sleep(100);
+        //The hedge went to a bad node that fails fast; the healthy primary keeps running and wins
+        hedge.complete(RevolverHttpResponse.builder().statusCode(503).build());
+        assertFalse(result.isDone());
+        assertFalse(primary.isDone());
+        primary.complete(RevolverHttpResponse.builder().statusCode(200).build());
+        assertEquals(200, result.get(1, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(0, metrics.meter("revolver.hedge.hedge.test.won").getCount());
+    }
+
+    @Test
+    public void testServerErrorWhenEveryCallFails() throws Exception {
+        val policy = warmedUp(new MetricRegistry());
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val hedge = new CompletableFuture<RevolverHttpResponse>();
+        val result = policy.execute(primary, () -> hedge);
+        Thread.sleep(100);
+        primary.complete(RevolverHttpResponse.builder().statusCode(500).build());
+        assertFalse(result.isDone());
+        hedge.completeExceptionally(new IOException("failed"));
+        assertEquals(500, result.get(1, TimeUnit.SECONDS).getStatusCode());
+    }
+
+    @Test
+    public void testTimedOutCallsAreNotLost() throws Exception {
+        val policy = warmedUp(new MetricRegistry());
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val hedge = new CompletableFuture<RevolverHttpResponse>();
+        val result = policy.execute(primary, () -> hedge);
+        Thread.sleep(100);
+        result.cancel(true);
+        assertTrue(primary.isCancelled());
+        assertTrue(hedge.isCancelled());
+        assertFalse(HedgingPolicy.lost(primary));
+        assertFalse(HedgingPolicy.lost(hedge));
+    }
+
+    @Test
+    public void testNoHedgeWithoutOtherNode() throws Exception {
+        val policy = warmedUp(new MetricRegistry());
+        val primary = new CompletableFuture<RevolverHttpResponse>();
+        val result = policy.execute(primary, () -> null);
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        primary.completeExceptionally(new IOException("failed"));
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("Primary failure must fail the call");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testOnlyIdempotentRequests() {
+        val policy = new HedgingPolicy("hedge", apiConfig(5), new MetricRegistry());
+        assertTrue(policy.applies(RevolverHttpRequest.builder().method(RevolverHttpApiConfig.RequestMethod.GET).build()));
+        assertFalse(policy.applies(RevolverHttpRequest.builder().method(RevolverHttpApiConfig.RequestMethod.POST).build()));
+    }
+
+    //Hedges after 20ms, with budget for every call
+    private HedgingPolicy warmedUp(final MetricRegistry metrics) {
+        val policy = new HedgingPolicy("hedge", apiConfig(100), metrics);
+        for (int i = 0; i < 100; i++) {
+            policy.record(20);
+        }
+        return policy;
+    }
+
+    private RevolverHttpApiConfig apiConfig(final int budget) {
+        val apiConfig = RevolverHttpApiConfig.configBuilder()
+                .api("test")
+                .path("{version}/test")
+                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                .build();
+        apiConfig.setHedge(RevolverHttpHedgeConfig.builder().enabled(true).budget(budget).build());
+        return apiConfig;
+    }
+}
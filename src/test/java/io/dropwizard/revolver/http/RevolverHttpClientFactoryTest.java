@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.dropwizard.revolver.core.config.HystrixCommandConfig;
+import io.dropwizard.revolver.core.config.hystrix.ThreadPoolConfig;
+import io.dropwizard.revolver.discovery.model.SimpleEndpointSpec;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpTimeoutConfig;
+import lombok.val;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class RevolverHttpClientFactoryTest {
+
+    @Test
+    public void testClientSharedAcrossApiChanges() throws Exception {
+        val client = RevolverHttpClientFactory.buildClient(serviceConfig("factory_shared", "one", 4));
+        assertSame(client, RevolverHttpClientFactory.buildClient(serviceConfig("factory_shared", "two", 4)));
+        assertSame(client, RevolverHttpClientFactory.buildClient(serviceConfig("factory_shared_other", "one", 4)));
+    }
+
+    @Test
+    public void testClientReplacedOnPoolChange() throws Exception {
+        val client = RevolverHttpClientFactory.buildClient(serviceConfig("factory_replaced", "one", 2));
+        val replaced = RevolverHttpClientFactory.buildClient(serviceConfig("factory_replaced", "one", 3));
+        assertNotSame(client, replaced);
+        assertSame(replaced, RevolverHttpClientFactory.buildClient(serviceConfig("factory_replaced", "one", 3)));
+    }
+
+    @Test
+    public void testPoolGauges() throws Exception {
+        val metrics = new MetricRegistry();
+        RevolverHttpClientFactory.instrument(metrics);
+        RevolverHttpClientFactory.buildClient(serviceConfig("factory_gauges", "one", 1));
+        assertEquals(0, metrics.getGauges().get("revolver.http.pool.factory_gauges.idle").getValue());
+        assertEquals(0, metrics.getGauges().get("revolver.http.pool.factory_gauges.active").getValue());
+        assertEquals(0L, metrics.getGauges().get("revolver.http.pool.factory_gauges.evicted").getValue());
+        assertEquals(0, metrics.getGauges().get("revolver.http.pool.factory_gauges.inflight").getValue());
+        RevolverHttpClientFactory.release("factory_gauges");
+        //Services dropped from the config leave no gauges behind
+        assertTrue(metrics.getGauges((name, metric) -> name.startsWith("revolver.http.pool.factory_gauges.")).isEmpty());
+        //and get them back when they return
+        RevolverHttpClientFactory.buildClient(serviceConfig("factory_gauges", "one", 1));
+        assertEquals(0, metrics.getGauges().get("revolver.http.pool.factory_gauges.idle").getValue());
+        RevolverHttpClientFactory.release("factory_gauges");
+    }
+
+    @Test
+    public void testEvictedGauge() throws Exception {
+        val server = new WireMockServer(9997);
+        server.start();
+        try {
+            server.stubFor(get(urlEqualTo("/evicted")).willReturn(aResponse().withStatus(200)));
+            val metrics = new MetricRegistry();
+            RevolverHttpClientFactory.instrument(metrics);
+            val config = serviceConfig("factory_evicted", "one", 1);
+            ((SimpleEndpointSpec) config.getEndpoint()).setPort(9997);
+            val client = RevolverHttpClientFactory.buildClient(config);
+            client.newCall(new Request.Builder().url("http://localhost:9997/evicted").build()).execute().close();
+            assertEquals(1, metrics.getGauges().get("revolver.http.pool.factory_evicted.idle").getValue());
+            assertEquals(0L, metrics.getGauges().get("revolver.http.pool.factory_evicted.evicted").getValue());
+            client.connectionPool().evictAll();
+            assertEquals(1L, metrics.getGauges().get("revolver.http.pool.factory_evicted.evicted").getValue());
+        } finally {
+            RevolverHttpClientFactory.release("factory_evicted");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testInflightGauge() throws Exception {
+        val server = new WireMockServer(9997);
+        server.start();
+        try {
+            server.stubFor(get(urlEqualTo("/inflight")).willReturn(aResponse().withStatus(200).withFixedDelay(500)));
+            val metrics = new MetricRegistry();
+            RevolverHttpClientFactory.instrument(metrics);
+            val config = serviceConfig("factory_inflight", "one", 1);
+            val apiClient = RevolverHttpClientFactory.apiClient(RevolverHttpClientFactory.buildClient(config), "factory_inflight",
+                    config.getApis().iterator().next(), 2000);
+            val gauge = metrics.getGauges().get("revolver.http.pool.factory_inflight.inflight");
+            val response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return apiClient.newCall(new Request.Builder().url("http://localhost:9997/inflight").build()).execute().code();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            for (int i = 0; i < 40 && !Integer.valueOf(1).equals(gauge.getValue()); i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, gauge.getValue());
+            assertEquals(200, response.get().intValue());
+            assertEquals(0, gauge.getValue());
+        } finally {
+            RevolverHttpClientFactory.release("factory_inflight");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDispatcherAdmitsHystrixConcurrency() throws Exception {
+        val client = RevolverHttpClientFactory.buildClient(nonBlockingConfig("factory_dispatcher", apiConfig("one", 8), apiConfig("two", 12)));
+        //Not capped at the single pooled connection: with http/2 it carries all of them
+        assertEquals(20, client.dispatcher().getMaxRequests());
+        assertEquals(20, client.dispatcher().getMaxRequestsPerHost());
+
+        //Services sharing the client add up
+        assertSame(client, RevolverHttpClientFactory.buildClient(nonBlockingConfig("factory_dispatcher_other", apiConfig("one", 5))));
+        assertEquals(25, client.dispatcher().getMaxRequests());
+        RevolverHttpClientFactory.release("factory_dispatcher_other");
+        assertEquals(20, client.dispatcher().getMaxRequests());
+        RevolverHttpClientFactory.release("factory_dispatcher");
+    }
+
+    @Test
+    public void testProtocols() throws Exception {
+        val config = serviceConfig("factory_h2c", "one", 1);
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), RevolverHttpClientFactory.buildClient(config).protocols());
+        config.setProtocol(RevolverHttpServiceConfig.HttpProtocol.H2C);
+        assertEquals(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE), RevolverHttpClientFactory.buildClient(config).protocols());
+        config.setProtocol(RevolverHttpServiceConfig.HttpProtocol.HTTP_1_1);
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), RevolverHttpClientFactory.buildClient(config).protocols());
+        config.setSecured(true);
+        config.setProtocol(RevolverHttpServiceConfig.HttpProtocol.H2C);
+        assertEquals(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1), RevolverHttpClientFactory.buildClient(config).protocols());
+    }
+
+    @Test
+    public void testApiClientTimeouts() throws Exception {
+        val client = RevolverHttpClientFactory.buildClient(serviceConfig("factory_timeouts", "one", 1));
+        val apiConfig = RevolverHttpApiConfig.configBuilder()
+                .api("one")
+                .path("{version}/one")
+                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                .build();
+        apiConfig.setTimeouts(RevolverHttpTimeoutConfig.builder().connectTimeout(100).build());
+        val apiClient = RevolverHttpClientFactory.apiClient(client, "factory_timeouts", apiConfig, 2000);
+        assertSame(client.connectionPool(), apiClient.connectionPool());
+        assertEquals(100, apiClient.connectTimeoutMillis());
+        assertEquals(2000, apiClient.readTimeoutMillis());
+        assertEquals(2000, apiClient.writeTimeoutMillis());
+        assertEquals(2000, apiClient.callTimeoutMillis());
+        assertTrue(apiClient.retryOnConnectionFailure());
+        apiConfig.setStreaming(true);
+        val streamingClient = RevolverHttpClientFactory.apiClient(client, "factory_timeouts", apiConfig, 2000);
+        assertEquals(0, streamingClient.callTimeoutMillis());
+        assertFalse(streamingClient.retryOnConnectionFailure());
+    }
+
+    private RevolverHttpServiceConfig nonBlockingConfig(final String service, final RevolverHttpApiConfig... apis) {
+        val endpoint = new SimpleEndpointSpec();
+        endpoint.setHost("localhost");
+        endpoint.setPort(9998);
+        return RevolverHttpServiceConfig.builder()
+                .service(service)
+                .type("http")
+                .enpoint(endpoint)
+                .connectionPoolSize(1)
+                .nonBlocking(true)
+                .apis(Arrays.asList(apis))
+                .build();
+    }
+
+    private RevolverHttpApiConfig apiConfig(final String api, final int concurrency) {
+        return RevolverHttpApiConfig.configBuilder()
+                .api(api)
+                .path("{version}/" + api)
+                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                .runtime(HystrixCommandConfig.builder()
+                        .threadPool(ThreadPoolConfig.builder().concurrency(concurrency).timeout(2000).build())
+                        .build())
+                .build();
+    }
+
+    private RevolverHttpServiceConfig serviceConfig(final String service, final String api, final int poolSize) {
+        val endpoint = new SimpleEndpointSpec();
+        endpoint.setHost("localhost");
+        endpoint.setPort(9998);
+        return RevolverHttpServiceConfig.builder()
+                .service(service)
+                .type("http")
+                .enpoint(endpoint)
+                .connectionPoolSize(poolSize)
+                .api(RevolverHttpApiConfig.configBuilder()
+                        .api(api)
+                        .path("{version}/" + api)
+                        .method(RevolverHttpApiConfig.RequestMethod.GET)
+                        .build())
+                .build();
+    }
+}
@@ -22,12 +22,24 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import io.dropwizard.revolver.BaseRevolverTest;
 import io.dropwizard.revolver.RevolverBundle;
 import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.config.RevolverHttpServiceConfig;
 import io.dropwizard.revolver.http.model.RevolverHttpRequest;
+import io.dropwizard.revolver.http.model.RevolverHttpResponse;
 import lombok.val;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import org.junit.Rule;
 import org.junit.Test;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -56,6 +68,189 @@ public class RevolverSimpleHttpCommandTest extends BaseRevolverTest {
         assertEquals(response.getStatusCode(), 200);
     }
 
+    @Test
+    public void testNonBlockingGetHttpCommand() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")));
+        val httpCommand = command("test_non_blocking", true, RevolverBundle.getHttpCommand("test").getServiceConfiguration().getApis());
+        assertTrue(httpCommand.isNonBlocking());
+        val request = request("test_non_blocking", "test");
+        assertEquals(200, httpCommand.execute(request).getStatusCode());
+        assertEquals(200, httpCommand.executeAsync(request).get().getStatusCode());
+    }
+
+    @Test
+    public void testCoalescedGetHttpCommand() throws Exception {
+        stubFor(get(urlEqualTo("/v1/coalesce"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{}")));
+        val apiConfig = apiConfig("coalesce");
+        apiConfig.setCoalesce(true);
+        val httpCommand = command("test_coalesce", false, Collections.singleton(apiConfig));
+        val responses = IntStream.range(0, 5)
+                .mapToObj(i -> httpCommand.executeAsync(request("test_coalesce", "coalesce")))
+                .collect(Collectors.toList());
+        for (val response : responses) {
+            assertEquals(200, response.get().getStatusCode());
+        }
+        verify(1, getRequestedFor(urlEqualTo("/v1/coalesce")));
+        assertEquals(4, RevolverBundle.getMetrics().meter("revolver.test_coalesce.coalesce.coalesced").getCount());
+        assertEquals(1, RevolverBundle.getMetrics().meter("revolver.test_coalesce.coalesce.executed").getCount());
+    }
+
+    @Test
+    public void testCoalescingKeepsCallersApart() throws Exception {
+        stubFor(get(urlEqualTo("/v1/coalesce_users"))
+                .withHeader(HttpHeaders.AUTHORIZATION, equalTo("Bearer alice"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"user\": \"alice\"}")));
+        stubFor(get(urlEqualTo("/v1/coalesce_users"))
+                .withHeader(HttpHeaders.AUTHORIZATION, equalTo("Bearer bob"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"user\": \"bob\"}")));
+        val apiConfig = apiConfig("coalesce_users");
+        apiConfig.setCoalesce(true);
+        val httpCommand = command("test_coalesce_users", false, Collections.singleton(apiConfig));
+        val alice = request("test_coalesce_users", "coalesce_users");
+        alice.setHeaders(new MultivaluedHashMap<>(Collections.singletonMap(HttpHeaders.AUTHORIZATION, "Bearer alice")));
+        val bob = request("test_coalesce_users", "coalesce_users");
+        bob.setHeaders(new MultivaluedHashMap<>(Collections.singletonMap(HttpHeaders.AUTHORIZATION, "Bearer bob")));
+        val aliceResponse = httpCommand.executeAsync(alice);
+        val bobResponse = httpCommand.executeAsync(bob);
+        assertEquals("{\"user\": \"alice\"}", new String(aliceResponse.get().getBody()));
+        assertEquals("{\"user\": \"bob\"}", new String(bobResponse.get().getBody()));
+        verify(2, getRequestedFor(urlEqualTo("/v1/coalesce_users")));
+        assertEquals(0, RevolverBundle.getMetrics().meter("revolver.test_coalesce_users.coalesce_users.coalesced").getCount());
+    }
+
+    @Test
+    public void testUndeliveredStreamedResponseIsClosed() throws Exception {
+        stubFor(get(urlEqualTo("/v1/stream"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/octet-stream")
+                        .withBody(new byte[64 * 1024])));
+        val client = new OkHttpClient();
+        val request = new Request.Builder().url("http://localhost:9999/v1/stream").build();
+
+        //Delivered: left open for the consumer to stream out
+        val delivered = client.newCall(request).execute();
+        val consumed = new CompletableFuture<RevolverHttpResponse>();
+        RevolverHttpCommand.deliver(consumed, RevolverHttpResponse.builder().statusCode(200)
+                .bodyStream(delivered.body().byteStream()).build(), delivered);
+        assertNotNull(consumed.get().getBodyStream());
+        assertEquals(0, client.connectionPool().idleConnectionCount());
+        delivered.close();
+
+        //Cancelled by a timeout (or a lost hedge) before the response came in: no one will read it
+        val response = client.newCall(request).execute();
+        val cancelled = new CompletableFuture<RevolverHttpResponse>();
+        cancelled.cancel(false);
+        RevolverHttpCommand.deliver(cancelled, RevolverHttpResponse.builder().statusCode(200)
+                .bodyStream(response.body().byteStream()).build(), response);
+        assertEquals(client.connectionPool().connectionCount(), client.connectionPool().idleConnectionCount());
+    }
+
+    @Test
+    public void testCachedGetHttpCommand() throws Exception {
+        stubFor(get(urlEqualTo("/v1/cached"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "max-age=60")
+                        .withBody("{\"cached\": true}")));
+        val httpCommand = cachingCommand("test_cache", "cached");
+        val first = httpCommand.executeAsync(request("test_cache", "cached")).get();
+        val second = httpCommand.executeAsync(request("test_cache", "cached")).get();
+        assertEquals(200, second.getStatusCode());
+        assertArrayEquals(first.getBody(), second.getBody());
+        assertNotNull(second.getHeaders().getFirst("Age"));
+        verify(1, getRequestedFor(urlEqualTo("/v1/cached")));
+        assertEquals(1, RevolverBundle.getMetrics().meter("revolver.cache.test_cache.cached.hits").getCount());
+        assertEquals(1, RevolverBundle.getMetrics().meter("revolver.cache.test_cache.cached.misses").getCount());
+        assertTrue((Long)RevolverBundle.getMetrics().getGauges().get("revolver.cache.test_cache.cached.bytes.heap").getValue() > 0);
+    }
+
+    @Test
+    public void testCacheRevalidatesWithEtag() throws Exception {
+        stubFor(get(urlEqualTo("/v1/etag"))
+                .atPriority(2)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "no-cache")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBody("{\"version\": 1}")));
+        stubFor(get(urlEqualTo("/v1/etag"))
+                .atPriority(1)
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"v1\"")));
+        val httpCommand = cachingCommand("test_etag", "etag");
+        val first = httpCommand.executeAsync(request("test_etag", "etag")).get();
+        val second = httpCommand.executeAsync(request("test_etag", "etag")).get();
+        assertEquals(200, second.getStatusCode());
+        assertArrayEquals(first.getBody(), second.getBody());
+        verify(1, getRequestedFor(urlEqualTo("/v1/etag")).withHeader("If-None-Match", equalTo("\"v1\"")));
+        assertEquals(1, RevolverBundle.getMetrics().meter("revolver.cache.test_etag.etag.revalidated").getCount());
+    }
+
+    private RevolverHttpCommand cachingCommand(final String service, final String api) throws Exception {
+        val apiConfig = apiConfig(api);
+        apiConfig.getCache().setEnabled(true);
+        return command(service, false, Collections.singleton(apiConfig));
+    }
+
+    /**
+     * Command with its own client against the wiremock endpoint of the test service
+     */
+    private RevolverHttpCommand command(final String service, final boolean nonBlocking, final Collection<RevolverHttpApiConfig> apis) throws Exception {
+        return RevolverHttpCommand.builder()
+                .clientConfiguration(revolverConfig.getClientConfig())
+                .runtimeConfig(revolverConfig.getGlobal())
+                .serviceConfiguration(RevolverHttpServiceConfig.builder()
+                        .connectionPoolSize(1)
+                        .enpoint(RevolverBundle.getHttpCommand("test").getServiceConfiguration().getEndpoint())
+                        .service(service)
+                        .type("http")
+                        .apis(apis)
+                        .nonBlocking(nonBlocking)
+                        .build())
+                .apiConfigurations(apis.stream().collect(Collectors.toMap(RevolverHttpApiConfig::getApi, Function.identity())))
+                .serviceResolver(RevolverBundle.getServiceNameResolver())
+                .traceCollector(trace -> {})
+                .build();
+    }
+
+    private RevolverHttpApiConfig apiConfig(final String api) {
+        return RevolverHttpApiConfig.configBuilder()
+                .api(api)
+                .path("{version}/" + api)
+                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                .build();
+    }
+
+    private RevolverHttpRequest request(final String service, final String api) {
+        return RevolverHttpRequest.builder()
+                .service(service)
+                .api(api)
+                .method(RevolverHttpApiConfig.RequestMethod.GET)
+                .path("v1/" + api)
+                .build();
+    }
+
     @Test
     public void testSimpleGetHttpCommandWithWrongPath() throws TimeoutException {
         stubFor(get(urlEqualTo("/v1/test"))
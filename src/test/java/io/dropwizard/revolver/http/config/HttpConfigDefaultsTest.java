@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.http.config;
+
+import lombok.val;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Defaults have to hold for configs built by jackson (no args constructor) as well as by builders
+ * @author phaneesh
+ */
+public class HttpConfigDefaultsTest {
+
+    @Test
+    public void testCacheDefaults() {
+        for (val config : new RevolverHttpCacheConfig[] {new RevolverHttpCacheConfig(), RevolverHttpCacheConfig.builder().build(),
+                new RevolverHttpApiConfig().getCache()}) {
+            assertFalse(config.isEnabled());
+            assertEquals(16 * 1024 * 1024, config.getHeapSize());
+            assertEquals(0, config.getOffHeapSize());
+            assertEquals(1024 * 1024, config.getMaxEntrySize());
+        }
+    }
+
+    @Test
+    public void testHedgeDefaults() {
+        for (val config : new RevolverHttpHedgeConfig[] {new RevolverHttpHedgeConfig(), RevolverHttpHedgeConfig.builder().build(),
+                new RevolverHttpApiConfig().getHedge()}) {
+            assertFalse(config.isEnabled());
+            assertEquals(95.0, config.getPercentile(), 0.0);
+            assertEquals(5, config.getBudget());
+            assertEquals(5, config.getMinDelay());
+        }
+    }
+}
@@ -17,11 +17,15 @@
 
 package io.dropwizard.revolver.resource;
 
+import com.codahale.metrics.MetricRegistry;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import io.dropwizard.revolver.BaseRevolverTest;
 import io.dropwizard.revolver.RevolverBundle;
+import io.dropwizard.revolver.core.config.LoadSheddingConfig;
+import io.dropwizard.revolver.core.limiter.LoadShedder;
 import io.dropwizard.revolver.http.RevolversHttpHeaders;
 import io.dropwizard.testing.junit.ResourceTestRule;
+import lombok.val;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
@@ -30,9 +34,11 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 /**
  * @author phaneesh
@@ -42,7 +48,18 @@ public class RevolverRequestResourceTest extends BaseRevolverTest {
     @ClassRule
     public static final ResourceTestRule resources = ResourceTestRule.builder()
             .addResource(new RevolverRequestResource(environment.getObjectMapper(),
-                    RevolverBundle.msgPackObjectMapper, RevolverBundle.xmlObjectMapper, inMemoryPersistenceProvider, callbackHandler))
+                    RevolverBundle.msgPackObjectMapper, RevolverBundle.xmlObjectMapper, inMemoryPersistenceProvider, callbackHandler,
+                    RevolverBundle.getAsyncExecutor(), null))
+            .build();
+
+    private static final LoadShedder shedder = new LoadShedder(LoadSheddingConfig.builder()
+            .enabled(true).maxInflight(1).cpuThreshold(1.0).build(), new MetricRegistry());
+
+    @ClassRule
+    public static final ResourceTestRule sheddingResources = ResourceTestRule.builder()
+            .addResource(new RevolverRequestResource(environment.getObjectMapper(),
+                    RevolverBundle.msgPackObjectMapper, RevolverBundle.xmlObjectMapper, inMemoryPersistenceProvider, callbackHandler,
+                    RevolverBundle.getAsyncExecutor(), shedder))
             .build();
 
     @Rule
@@ -132,5 +149,98 @@ public class RevolverRequestResourceTest extends BaseRevolverTest {
                 .options().getStatus());
     }
 
+    @Test
+    public void testTranscodedResponse() {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"name\":\"test\"}")));
+        val response = resources.client().target("/apis/test/v1/test").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .accept(MediaType.APPLICATION_XML)
+                .get();
+        assertEquals(200, response.getStatus());
+        assertEquals("<Response><name>test</name></Response>", response.readEntity(String.class).replaceAll(">\\s+<", "><").trim());
+    }
+
+    @Test
+    public void testMalformedResponseNotTranscodedAsSuccess() {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"name\":")));
+        assertNotEquals(200, resources.client().target("/apis/test/v1/test").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .accept(MediaType.APPLICATION_XML)
+                .get().getStatus());
+    }
+
+    @Test
+    public void testStreamingRequest() {
+        stubFor(post(urlEqualTo("/v1/stream"))
+                .withRequestBody(equalTo("upload"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_OCTET_STREAM)
+                        .withBody("download")));
+        val response = resources.client().target("/apis/test/v1/stream").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .post(Entity.entity("upload", MediaType.APPLICATION_OCTET_STREAM));
+        assertEquals(200, response.getStatus());
+        assertEquals("download", response.readEntity(String.class));
+    }
+
+    @Test
+    public void testShedsWhenOverloaded() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1000)
+                        .withHeader("Content-Type", "application/json")));
+        val inflight = CompletableFuture.supplyAsync(() -> sheddingResources.client().target("/apis/test/v1/test").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .get().getStatus());
+        for (int i = 0; i < 100 && shedder.getInflight() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, shedder.getInflight());
+        assertEquals(503, sheddingResources.client().target("/apis/test/v1/test").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .get().getStatus());
+        assertEquals(200, inflight.get().intValue());
+        assertEquals(0, shedder.getInflight());
+    }
 
+    @Test
+    public void testStreamedResponseHoldsPermitUntilWritten() throws Exception {
+        stubFor(get(urlEqualTo("/v1/stream"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_OCTET_STREAM)
+                        .withBody("download")
+                        .withChunkedDribbleDelay(4, 1000)));
+        val streaming = CompletableFuture.supplyAsync(() -> sheddingResources.client().target("/apis/test/v1/stream").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .get().readEntity(String.class));
+        for (int i = 0; i < 100 && shedder.getInflight() == 0; i++) {
+            Thread.sleep(10);
+        }
+        //The upstream has answered, but its body is still being written out
+        Thread.sleep(300);
+        assertEquals(1, shedder.getInflight());
+        assertEquals(503, sheddingResources.client().target("/apis/test/v1/test").request()
+                .header(RevolversHttpHeaders.REQUEST_ID_HEADER, UUID.randomUUID().toString())
+                .header(RevolversHttpHeaders.TXN_ID_HEADER, UUID.randomUUID().toString())
+                .get().getStatus());
+        assertEquals("download", streaming.get());
+        assertEquals(0, shedder.getInflight());
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package io.dropwizard.revolver.routing;
+
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.revolver.http.config.RevolverHttpApiConfig;
+import io.dropwizard.revolver.http.model.ApiPathMap;
+import lombok.val;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author phaneesh
+ */
+public class ApiPathTrieTest {
+
+    private ApiPathTrie trie;
+
+    @Before
+    public void setup() {
+        trie = new ApiPathTrie();
+        trie.add(apiPathMap("by_id", "{version}/users/{id}"));
+        trie.add(apiPathMap("me", "{version}/users/me"));
+        trie.add(apiPathMap("orders", "/{version}/users/{id}/orders/"));
+        trie.add(apiPathMap("order", "{version}/orders/order-{id}.json"));
+    }
+
+    @Test
+    public void testLiteralTakesPrecedence() {
+        val match = trie.match("v1/users/me");
+        assertNotNull(match);
+        assertEquals("me", match.getApiPathMap().getApi().getApi());
+        assertEquals("v1", match.getPathParams().get("version"));
+    }
+
+    @Test
+    public void testTemplateMatch() {
+        val match = trie.match("/v1/users/42/");
+        assertNotNull(match);
+        assertEquals("by_id", match.getApiPathMap().getApi().getApi());
+        assertEquals("42", match.getPathParams().get("id"));
+        assertEquals("orders", trie.match("v1/users/me/orders").getApiPathMap().getApi().getApi());
+        assertEquals("me", trie.match("v1/users/me/orders").getPathParams().get("id"));
+    }
+
+    @Test
+    public void testAffixedTemplateMatch() {
+        val match = trie.match("v2/orders/order-abc.json");
+        assertNotNull(match);
+        assertEquals("order", match.getApiPathMap().getApi().getApi());
+        assertEquals("abc", match.getPathParams().get("id"));
+        assertNull(trie.match("v2/orders/order-.json"));
+    }
+
+    @Test
+    public void testNoMatch() {
+        assertNull(trie.match("v1/users"));
+        assertNull(trie.match("v1/users/42/orders/1"));
+        assertNull(trie.match(""));
+    }
+
+    @Test
+    public void testMethodAwareMatch() {
+        trie.add(apiPathMap("create", "{version}/users/{id}", RevolverHttpApiConfig.RequestMethod.POST));
+        assertEquals("by_id", trie.match("v1/users/42", RevolverHttpApiConfig.RequestMethod.GET).getApiPathMap().getApi().getApi());
+        assertEquals("create", trie.match("v1/users/42", RevolverHttpApiConfig.RequestMethod.POST).getApiPathMap().getApi().getApi());
+        assertNull(trie.match("v1/users/42", RevolverHttpApiConfig.RequestMethod.DELETE));
+        //Literal route without POST falls back to the templated route that has it
+        assertEquals("create", trie.match("v1/users/me", RevolverHttpApiConfig.RequestMethod.POST).getApiPathMap().getApi().getApi());
+    }
+
+    @Test
+    public void testExpand() {
+        assertEquals("/v1/users/42", ApiPathTrie.expand("{version}/users/{id}", ImmutableMap.of("version", "v1", "id", "42")));
+        assertEquals("/v1/orders/order-7.json", ApiPathTrie.expand("{version}/orders/order-{id}.json", ImmutableMap.of("version", "v1", "id", "7")));
+        assertEquals("/v1/users/{id}", ApiPathTrie.expand("{version}/users/{id}", ImmutableMap.of("version", "v1")));
+    }
+
+    private ApiPathMap apiPathMap(final String api, final String path) {
+        return apiPathMap(api, path, RevolverHttpApiConfig.RequestMethod.GET);
+    }
+
+    private ApiPathMap apiPathMap(final String api, final String path, final RevolverHttpApiConfig.RequestMethod method) {
+        return ApiPathMap.builder()
+                .api(RevolverHttpApiConfig.configBuilder()
+                        .api(api)
+                        .path(path)
+                        .method(method)
+                        .build())
+                .path(path)
+                .build();
+    }
+}
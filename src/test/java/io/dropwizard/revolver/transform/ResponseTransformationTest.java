@@ -18,9 +18,19 @@
 package io.dropwizard.revolver.transform;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import io.dropwizard.revolver.BaseRevolverTest;
+import io.dropwizard.revolver.RevolverBundle;
+import io.dropwizard.revolver.util.ResponseTransformationUtil;
+import lombok.val;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -40,4 +50,50 @@ public class ResponseTransformationTest extends BaseRevolverTest {
         assertTrue(node.isObject());
     }
 
+    @Test
+    public void testMsgPackTranscodeRoundTrip() throws Exception {
+        final String json = "{\"id\":42,\"name\":\"test\",\"tags\":[\"a\",\"b\"],\"nested\":{\"value\":1.5}}";
+        val msgPack = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), mapper,
+                RevolverBundle.msgPackObjectMapper, msgPack);
+        assertEquals(mapper.readTree(json), RevolverBundle.msgPackObjectMapper.readTree(msgPack.toByteArray()));
+        val back = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream(msgPack.toByteArray()), RevolverBundle.msgPackObjectMapper,
+                mapper, back);
+        assertEquals(mapper.readTree(json), mapper.readTree(back.toByteArray()));
+    }
+
+    @Test
+    public void testXmlTranscode() throws Exception {
+        val xml = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream("{\"name\":\"test\"}".getBytes(StandardCharsets.UTF_8)), mapper,
+                RevolverBundle.xmlObjectMapper, xml);
+        assertEquals("<Response><name>test</name></Response>", xml.toString(StandardCharsets.UTF_8.name()).replaceAll(">\\s+<", "><").trim());
+        val array = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream("[1,2]".getBytes(StandardCharsets.UTF_8)), mapper,
+                RevolverBundle.xmlObjectMapper, array);
+        assertEquals("<Response><item>1</item><item>2</item></Response>", array.toString(StandardCharsets.UTF_8.name()).replaceAll(">\\s+<", "><").trim());
+    }
+
+    @Test
+    public void testTranscodeUsesTargetMapperConfig() throws Exception {
+        val indenting = new XmlMapper();
+        indenting.enable(SerializationFeature.INDENT_OUTPUT);
+        val xml = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream("{\"name\":\"test\",\"id\":1}".getBytes(StandardCharsets.UTF_8)), mapper,
+                indenting, xml);
+        assertTrue(xml.toString(StandardCharsets.UTF_8.name()).contains("\n"));
+        val compact = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream("{\"name\":\"test\",\"id\":1}".getBytes(StandardCharsets.UTF_8)), mapper,
+                new XmlMapper(), compact);
+        assertEquals("<Response><name>test</name><id>1</id></Response>", compact.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void testEmptyTranscode() throws Exception {
+        val output = new ByteArrayOutputStream();
+        ResponseTransformationUtil.transcode(new ByteArrayInputStream(new byte[0]), mapper, RevolverBundle.msgPackObjectMapper, output);
+        assertEquals(0, output.size());
+    }
+
 }